@@ -0,0 +1,662 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+
+/**
+ *
+ * ArrayWAVLTree
+ *
+ * The structure-of-arrays WAVL engine shared by {@link IntWAVLTree} and {@link LongWAVLTree}.
+ * Nodes are int handles into parallel arrays of values, children, parents, ranks and subtree sizes;
+ * a subclass keeps the keys in a primitive array of its own and only does the key comparisons,
+ * so keys are never boxed. Rebalancing, select and the node bookkeeping live here once.
+ * Freed handles are kept on a free-list and reused by later inserts.
+ * Handle 0 is the shared external leaf (rank -1, subTreeSize 0), told apart by its handle, never by its key.
+ *
+ */
+abstract class ArrayWAVLTree<V> {
+	protected static final int EXTERNAL = 0;
+	protected static final int DEFAULT_CAPACITY = 16;
+
+	private Object[] value;
+	protected int[] left;
+	protected int[] right;
+	private int[] parent;
+	private int[] rank;
+	private int[] subTreeSize;
+
+	protected int root;
+	private int size;
+	private int used;
+	private int free;
+
+	/**
+	 * constructor
+	 * @param capacity  number of nodes to reserve room for before growing
+	 */
+	protected ArrayWAVLTree(int capacity) {
+		int length = Math.max(capacity, 1) + 1;
+		this.value = new Object[length];
+		this.left = new int[length];
+		this.right = new int[length];
+		this.parent = new int[length];
+		this.rank = new int[length];
+		this.subTreeSize = new int[length];
+		this.rank[EXTERNAL] = -1;
+		this.root = EXTERNAL;
+		this.size = 0;
+		this.used = 1;
+		this.free = EXTERNAL;
+	}
+
+	/**
+	 *
+	 * @return true iff size == 0
+	 */
+	public boolean empty() {
+		return size==0;
+	}
+
+	/**
+	 * public int size()
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * links the new leaf n under p, on the side the subclass found for its key, and rebalances
+	 * @param n  handle from {@link #allocate(Object)}, its key already set
+	 * @param p  the last node on the search path, EXTERNAL if the tree is empty
+	 * @param isLeft  true iff n's key is smaller than p's
+	 * @return the number of rebalancing operations, as {@link WAVLTree#insert(int, String)}
+	 */
+	protected int link(int n, int p, boolean isLeft) {
+		parent[n] = p;
+		if(p == EXTERNAL) {
+			root = n;
+		} else {
+			if(isLeft) {
+				left[p] = n;
+			} else {
+				right[p] = n;
+			}
+			updateSubTreeSizes(p, 1);
+		}
+		size ++;
+		return reBalanceFrom(p, false);
+	}
+
+	/**
+	 * unlinks the inner node n, and rebalances
+	 * @param n  handle the subclass found for the deleted key
+	 * @return the number of rebalancing operations, as {@link WAVLTree#delete(int)}
+	 */
+	protected int unlink(int n)
+	{
+		size --;
+
+		if(isInnerLeaf(n)) {
+			int p = parent[n];
+			release(n);
+			if(p == EXTERNAL) {
+				root = EXTERNAL;
+				return 1;
+			}
+			replaceChild(p, n, EXTERNAL);
+			updateSubTreeSizes(p, -1);
+			return reBalanceFrom(p, true);
+		}
+
+		// Finding the one to replace n, same choice as WAVLTree.delete:
+		int swap = right[n] != EXTERNAL ? minNode(right[n]) : EXTERNAL;
+		if(swap == EXTERNAL || !isInnerLeaf(swap)) {
+			swap = left[n] != EXTERNAL ? maxNode(left[n]) : swap;
+		}
+
+		// Detaching swap, it has at most one child:
+		int swapParent = parent[swap];
+		int swapChild = left[swap] != EXTERNAL ? left[swap] : right[swap];
+		replaceChild(swapParent, swap, swapChild);
+		setParent(swapChild, swapParent);
+		updateSubTreeSizes(swapParent, -1);
+
+		// Replacing n with swap:
+		left[swap] = left[n];
+		right[swap] = right[n];
+		setParent(left[swap], swap);
+		setParent(right[swap], swap);
+		parent[swap] = parent[n];
+		rank[swap] = rank[n];
+		subTreeSize[swap] = subTreeSize[n];
+		replaceChild(parent[n], n, swap);
+		release(n);
+
+		// Rebalancing:
+		return reBalanceFrom(swapParent == n ? swap : swapParent, true);
+	}
+
+	/**
+	 * Rebalances the tree from start up to the root,
+	 * same cases as {@link WAVLTree#reBalance(WAVLTree.WAVLNode, boolean)}
+	 * @param start  lowest node whose rank may be invalid, may be EXTERNAL
+	 * @return number of rebalance steps
+	 */
+	private int reBalanceFrom(int start, boolean isDelete) {
+		int counter = 0;
+
+		for(int curr = start; curr != EXTERNAL; curr = parent[curr]) {
+			int Rank = 1 + Math.max(rank[left[curr]], rank[right[curr]]);
+			int LeftRank = rank[left[curr]];
+			int RightRank = rank[right[curr]];
+
+			// Case 1 - Problem with the left son:
+			if(Rank - LeftRank > 2) {
+				if(rank[left[right[curr]]] > rank[right[right[curr]]]) {
+					doubleRotationLeft(curr);
+					counter += 2;
+				} else {
+					rotateLeft(curr);
+					counter += 1;
+				}
+			}
+
+			// Case 2 - Problem with the right son:
+			else if(Rank - RightRank > 2) {
+				if(rank[right[left[curr]]] > rank[left[left[curr]]]) {
+					doubleRotationRight(curr);
+					counter += 2;
+				} else {
+					rotateRight(curr);
+					counter += 1;
+				}
+			}
+
+			// Stopping conditions for rebalancing after deletes:
+			if(isDelete && legitRank(curr)
+					&& !isInnerLeaf(curr)
+					&& parent[curr] != EXTERNAL
+					&& legitRank(parent[curr])) {
+				return counter;
+			}
+
+			if(isDelete && parent[curr] != EXTERNAL && !isInnerLeaf(curr)) {
+				int diff = rank[parent[curr]] - 3;
+				int maxChild = Math.max(rank[left[curr]], rank[right[curr]]);
+				int minChild = Math.min(rank[left[curr]], rank[right[curr]]);
+				if(rank[parent[curr]] - minChild >= 5) {
+					rank[curr] = 1 + maxChild;
+				} else {
+					rank[curr] = 1 + Math.max(diff, maxChild);
+				}
+				counter += 1;
+			} else {
+				int prevRank = rank[curr];
+				updateRank(curr);
+				if(rank[curr] != prevRank) {
+					counter++;
+				}
+			}
+		}
+		return counter;
+	}
+
+	/**
+	 * rotating right on node n
+	 * @param n
+	 */
+	private void rotateRight(int n) {
+		int nRank = rank[n];
+		int nParent = parent[n];
+		int nLeft = left[n];
+		int nLeftRight = right[nLeft];
+
+		left[n] = nLeftRight;
+		setParent(nLeftRight, n);
+		right[nLeft] = n;
+		parent[n] = nLeft;
+		parent[nLeft] = nParent;
+		rank[n] = nRank - 1;
+		rank[nLeft] = nRank;
+		replaceChild(nParent, n, nLeft);
+
+		calculateSubTreeSize(n);
+		calculateSubTreeSize(nLeft);
+	}
+
+	/**
+	 * rotating left on node n
+	 * @param n
+	 */
+	private void rotateLeft(int n) {
+		int nRank = rank[n];
+		int nParent = parent[n];
+		int nRight = right[n];
+		int nRightLeft = left[nRight];
+
+		right[n] = nRightLeft;
+		setParent(nRightLeft, n);
+		left[nRight] = n;
+		parent[n] = nRight;
+		parent[nRight] = nParent;
+		rank[n] = nRank - 1;
+		rank[nRight] = nRank;
+		replaceChild(nParent, n, nRight);
+
+		calculateSubTreeSize(n);
+		calculateSubTreeSize(nRight);
+	}
+
+	/**
+	 * perform double rotation right on node n
+	 * @param n
+	 */
+	private void doubleRotationRight(int n) {
+		int nParent = parent[n];
+		int nLeft = left[n];
+		int nLeftRight = right[nLeft]; // n's replacement
+		int nLeftRightRight = right[nLeftRight];
+		int nLeftRightLeft = left[nLeftRight];
+
+		// Updating and placing n:
+		left[n] = nLeftRightRight;
+		setParent(nLeftRightRight, n);
+		parent[n] = nLeftRight;
+
+		// Updating n's replacement:
+		left[nLeftRight] = nLeft;
+		right[nLeftRight] = n;
+		parent[nLeftRight] = nParent;
+
+		// Updating n's left son:
+		parent[nLeft] = nLeftRight;
+		right[nLeft] = nLeftRightLeft;
+		setParent(nLeftRightLeft, nLeft);
+
+		replaceChild(nParent, n, nLeftRight);
+
+		updateRank(nLeft);
+		updateRank(n);
+		updateRank(nLeftRight);
+
+		calculateSubTreeSize(n);
+		calculateSubTreeSize(nLeft);
+		calculateSubTreeSize(nLeftRight);
+	}
+
+	/**
+	 * perform double rotation left on node n
+	 * @param n
+	 */
+	private void doubleRotationLeft(int n) {
+		int nParent = parent[n];
+		int nRight = right[n];
+		int nRightLeft = left[nRight]; // n's replacement
+		int nRightLeftLeft = left[nRightLeft];
+		int nRightLeftRight = right[nRightLeft];
+
+		// Updating and placing n:
+		right[n] = nRightLeftLeft;
+		setParent(nRightLeftLeft, n);
+		parent[n] = nRightLeft;
+
+		// Updating n's replacement:
+		right[nRightLeft] = nRight;
+		left[nRightLeft] = n;
+		parent[nRightLeft] = nParent;
+
+		// Updating n's right son:
+		parent[nRight] = nRightLeft;
+		left[nRight] = nRightLeftRight;
+		setParent(nRightLeftRight, nRight);
+
+		replaceChild(nParent, n, nRightLeft);
+
+		updateRank(nRight);
+		updateRank(n);
+		updateRank(nRightLeft);
+
+		calculateSubTreeSize(n);
+		calculateSubTreeSize(nRight);
+		calculateSubTreeSize(nRightLeft);
+	}
+
+	/**
+	 * public V min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 * @return value of node with smallest key
+	 */
+	public V min()
+	{
+		return getValue(minNode(root));
+	}
+
+	/**
+	 * public V max()
+	 *
+	 * @return the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public V max()
+	{
+		return getValue(maxNode(root));
+	}
+
+	/**
+	 * public V[] infoToArray(IntFunction<V[]> generator)
+	 *
+	 * @param generator  makes the array to fill, given its length, e.g. String[]::new
+	 * @return an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public V[] infoToArray(IntFunction<V[]> generator)
+	{
+		V[] arr = generator.apply(size);
+		int index = 0;
+		for(int curr = minNode(root); curr != EXTERNAL; curr = successor(curr)) {
+			arr[index++] = getValue(curr);
+		}
+		return arr;
+	}
+
+	/**
+	 * public V select(int i)
+	 *
+	 * @return the value of the i'th smallest key (null if i is out of range)
+	 */
+	public V select(int i)
+	{
+		return getValue(selectNode(i));
+	}
+
+	/**
+	 * descends from the root by subTreeSize, O(log n)
+	 * @param i  1-based position of the wanted node
+	 * @return node holding the i'th smallest key, EXTERNAL if i is out of range
+	 */
+	protected int selectNode(int i) {
+		if(i > size || i <= 0) {
+			return EXTERNAL;
+		}
+		int curr = root;
+		while(curr != EXTERNAL) {
+			int leftSize = subTreeSize[left[curr]];
+			if(i == leftSize + 1) {
+				return curr;
+			}
+			if(i <= leftSize) {
+				curr = left[curr];
+			} else {
+				i -= leftSize + 1;
+				curr = right[curr];
+			}
+		}
+		return EXTERNAL;
+	}
+
+	/**
+	 * @return handle of the node holding the i'th smallest key
+	 * @throws NoSuchElementException if i is out of range
+	 */
+	protected int selectExisting(int i) {
+		int n = selectNode(i);
+		if(n == EXTERNAL) {
+			throw new NoSuchElementException("no key at position " + i + " of " + size);
+		}
+		return n;
+	}
+
+	/**
+	 * @return handle of the node holding the smallest key
+	 * @throws NoSuchElementException if the tree is empty
+	 */
+	protected int minExisting() {
+		if(root == EXTERNAL) {
+			throw new NoSuchElementException("tree is empty");
+		}
+		return minNode(root);
+	}
+
+	/**
+	 * @return n's in-order successor, EXTERNAL if n holds the maximal key
+	 */
+	protected int successor(int n) {
+		if(right[n] != EXTERNAL) {
+			return minNode(right[n]);
+		}
+		int p = parent[n];
+		while(p != EXTERNAL && right[p] == n) {
+			n = p;
+			p = parent[n];
+		}
+		return p;
+	}
+
+	/**
+	 * public int getRoot()
+	 *
+	 * @return handle of the root node, the external leaf handle if the tree is empty
+	 */
+	public int getRoot()
+	{
+		return root;
+	}
+
+	/**
+	 * @param n  node handle
+	 * @return true iff n is not the external leaf
+	 */
+	public boolean isInnerNode(int n) {
+		return n != EXTERNAL;
+	}
+
+	/**
+	 * getter
+	 * @param n  node handle
+	 * @return n's value
+	 */
+	@SuppressWarnings("unchecked")
+	public V getValue(int n) {
+		return (V) value[n];
+	}
+
+	/**
+	 * getter
+	 * @param n  node handle
+	 * @return handle of n's left son
+	 */
+	public int getLeft(int n) {
+		return left[n];
+	}
+
+	/**
+	 * getter
+	 * @param n  node handle
+	 * @return handle of n's right son
+	 */
+	public int getRight(int n) {
+		return right[n];
+	}
+
+	/**
+	 * getter
+	 * @param n  node handle
+	 * @return handle of n's parent, the external leaf handle for the root
+	 */
+	public int getParent(int n) {
+		return parent[n];
+	}
+
+	/**
+	 * getter
+	 * @param n  node handle
+	 * @return n's rank
+	 */
+	public int getRank(int n) {
+		return rank[n];
+	}
+
+	/**
+	 * getter
+	 * @param n  node handle
+	 * @return n's subTreeSize
+	 */
+	public int getSubtreeSize(int n) {
+		return subTreeSize[n];
+	}
+
+	/**
+	 * takes a handle from the free-list, or a fresh one (growing the arrays if needed).
+	 * the subclass sets the key of the returned handle
+	 * @return handle of a new inner leaf with value i
+	 */
+	protected int allocate(V i) {
+		int n = free;
+		if(n != EXTERNAL) {
+			free = left[n];
+		} else {
+			if(used == left.length) {
+				grow();
+			}
+			n = used++;
+		}
+		value[n] = i;
+		left[n] = EXTERNAL;
+		right[n] = EXTERNAL;
+		parent[n] = EXTERNAL;
+		rank[n] = 0;
+		subTreeSize[n] = 1;
+		return n;
+	}
+
+	/**
+	 * returns n to the free-list, chained through {@link #left}
+	 * @param n  handle of a node already unlinked from the tree
+	 */
+	private void release(int n) {
+		value[n] = null;
+		left[n] = free;
+		free = n;
+	}
+
+	/**
+	 * doubles the capacity of all node arrays
+	 */
+	private void grow() {
+		int length = left.length * 2;
+		value = Arrays.copyOf(value, length);
+		left = Arrays.copyOf(left, length);
+		right = Arrays.copyOf(right, length);
+		parent = Arrays.copyOf(parent, length);
+		rank = Arrays.copyOf(rank, length);
+		subTreeSize = Arrays.copyOf(subTreeSize, length);
+		growKeys(length);
+	}
+
+	/**
+	 * called when the node arrays grow, the subclass grows its key array to the same length
+	 * @param length  new length of every node array
+	 */
+	protected abstract void growKeys(int length);
+
+	/**
+	 * @return length of every node array, including the external leaf's slot
+	 */
+	protected int capacity() {
+		return left.length;
+	}
+
+	/**
+	 * puts child where old used to be under p, or as the root if p is EXTERNAL
+	 */
+	private void replaceChild(int p, int old, int child) {
+		if(p == EXTERNAL) {
+			root = child;
+		} else if(left[p] == old) {
+			left[p] = child;
+		} else {
+			right[p] = child;
+		}
+	}
+
+	/**
+	 * setter, ignored on the external leaf which never has a parent
+	 */
+	private void setParent(int n, int p) {
+		if(n != EXTERNAL) {
+			parent[n] = p;
+		}
+	}
+
+	/**
+	 * @return left most node in n's subtree, n itself if n is EXTERNAL
+	 */
+	protected int minNode(int n) {
+		while(left[n] != EXTERNAL) {
+			n = left[n];
+		}
+		return n;
+	}
+
+	/**
+	 * @return right most node in n's subtree, n itself if n is EXTERNAL
+	 */
+	private int maxNode(int n) {
+		while(right[n] != EXTERNAL) {
+			n = right[n];
+		}
+		return n;
+	}
+
+	/**
+	 * @return true iff n is not external and has no right and left
+	 */
+	private boolean isInnerLeaf(int n) {
+		return n != EXTERNAL && left[n] == EXTERNAL && right[n] == EXTERNAL;
+	}
+
+	/**
+	 * updates n's rank to 1 + max rank of its sons
+	 */
+	private void updateRank(int n) {
+		rank[n] = 1 + Math.max(rank[left[n]], rank[right[n]]);
+	}
+
+	/**
+	 * @return true iff all rank diffs of n are legits
+	 */
+	private boolean legitRank(int n) {
+		if(n == EXTERNAL) {
+			return true;
+		}
+		if(isInnerLeaf(n)) {
+			return rank[n] == 0;
+		}
+		if(parent[n] != EXTERNAL && rank[parent[n]] - rank[n] > 2) {
+			return false;
+		}
+		return rank[n] - Math.min(rank[left[n]], rank[right[n]]) <= 2;
+	}
+
+	/**
+	 * calculates and updates subTreeSize of n only
+	 */
+	private void calculateSubTreeSize(int n) {
+		subTreeSize[n] = 1 + subTreeSize[left[n]] + subTreeSize[right[n]];
+	}
+
+	/**
+	 * updates subTreeSize of n and all its ancestors by updateBy
+	 */
+	private void updateSubTreeSizes(int n, int updateBy) {
+		while(n != EXTERNAL) {
+			subTreeSize[n] += updateBy;
+			n = parent[n];
+		}
+	}
+}
@@ -0,0 +1,739 @@
+import java.util.Arrays;
+
+/**
+ *
+ * BucketedWAVLTree
+ *
+ * A WAVL Tree whose nodes are blocks of up to {@link #BLOCK_SIZE} sorted items instead of single items.
+ * All keys in a block's left subtree are smaller than its keys, and all keys in its right subtree bigger,
+ * so a search descends by comparing against a block's first and last key and then scans one block.
+ * The tree is about 1/32 as high and has 1/32 as many nodes as a {@link WAVLTree} of the same items.
+ * The WAVL rank rules hold between blocks: a full block splits in two and links the upper half
+ * in as a new leaf block, and a block that falls under a quarter full merges with a neighbor
+ * (or takes items from it), unlinking a block. Each block keeps the number of items in its subtree
+ * for select and rank.
+ *
+ */
+public class BucketedWAVLTree {
+	private static final int BLOCK_SIZE = 64;
+	private static final int MIN_FILL = BLOCK_SIZE / 4;
+	private static final int MERGED_FILL = 3 * BLOCK_SIZE / 4;
+
+	private Block root;
+	private int size;
+	private int blocks;
+
+	/**
+	 * empty constructor  sets default values
+	 */
+	public BucketedWAVLTree() {
+		this.root = null;
+		this.size = 0;
+		this.blocks = 0;
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 */
+	public boolean empty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of items in the tree.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * getter
+	 * @return number of blocks (tree nodes) in the tree
+	 */
+	public int getBlockCount() {
+		return this.blocks;
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public String search(int k) {
+		Block b = findBlock(k);
+		if(b == null) {
+			return null;
+		}
+		int index = b.indexOf(k);
+		return index < b.count && b.keys[index] == k ? b.values[index] : null;
+	}
+
+	/**
+	 * descends to the block that holds k, or that k would be inserted into
+	 * @return null if the tree is empty
+	 */
+	private Block findBlock(int k) {
+		Block curr = this.root;
+		while(curr != null) {
+			if(k < curr.keys[0] && curr.left != null) {
+				curr = curr.left;
+			} else if(k > curr.keys[curr.count - 1] && curr.right != null) {
+				curr = curr.right;
+			} else {
+				return curr;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i to the tree.
+	 * the tree must remain valid (keep its invariants).
+	 * returns the number of rebalancing operations between blocks, or 0 if none were necessary.
+	 * returns -1 if an item with key k already exists in the tree.
+	 */
+	public int insert(int k, String i) {
+		if(this.root == null) {
+			this.root = new Block();
+			this.root.insertAt(0, k, i);
+			this.root.calculateSubTreeCount();
+			this.blocks = 1;
+			this.size = 1;
+			return 0;
+		}
+		Block b = findBlock(k);
+		int index = b.indexOf(k);
+		// If item with k already exists:
+		if(index < b.count && b.keys[index] == k) {
+			return -1;
+		}
+
+		int counter = 0;
+		if(b.count == BLOCK_SIZE) {
+			Block upper = splitBlock(b);
+			counter = reBalanceInsert(upper);
+			if(index > b.count) {
+				index -= b.count;
+				b = upper;
+			}
+		}
+		b.insertAt(index, k, i);
+		recount(b);
+		this.size++;
+		return counter;
+	}
+
+	/**
+	 * moves the upper half of the full block b into a new leaf block, linked in as b's successor
+	 * @return the new block, rank 0
+	 */
+	private Block splitBlock(Block b) {
+		Block upper = new Block();
+		int half = b.count / 2;
+		upper.count = b.count - half;
+		System.arraycopy(b.keys, half, upper.keys, 0, upper.count);
+		System.arraycopy(b.values, half, upper.values, 0, upper.count);
+		Arrays.fill(b.values, half, b.count, null);
+		b.count = half;
+
+		if(b.right == null) {
+			b.right = upper;
+			upper.parent = b;
+		} else {
+			Block min = b.right;
+			while(min.left != null) {
+				min = min.left;
+			}
+			min.left = upper;
+			upper.parent = min;
+		}
+		recount(upper);
+		this.blocks++;
+		return upper;
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item with key k from the tree, if it is there;
+	 * the tree must remain valid (keep its invariants).
+	 * returns the number of rebalancing operations between blocks, or 0 if none were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(int k) {
+		Block b = findBlock(k);
+		if(b == null) {
+			return -1;
+		}
+		int index = b.indexOf(k);
+		// If item with k doesn't exists:
+		if(index == b.count || b.keys[index] != k) {
+			return -1;
+		}
+		b.removeAt(index);
+		recount(b);
+		this.size--;
+		if(b.count >= MIN_FILL) {
+			return 0;
+		}
+
+		// b is under filled, evening it out with a neighbor:
+		Block lower = b;
+		Block upper = successor(b);
+		if(upper == null) {
+			upper = b;
+			lower = predecessor(b);
+			if(lower == null) {
+				// b is the only block
+				if(b.count == 0) {
+					this.root = null;
+					this.blocks = 0;
+				}
+				return 0;
+			}
+		}
+		if(lower.count + upper.count <= MERGED_FILL) {
+			System.arraycopy(upper.keys, 0, lower.keys, lower.count, upper.count);
+			System.arraycopy(upper.values, 0, lower.values, lower.count, upper.count);
+			lower.count += upper.count;
+			upper.count = 0;
+			recount(lower);
+			recount(upper);
+			return removeBlock(upper);
+		}
+		balanceBlocks(lower, upper);
+		recount(lower);
+		recount(upper);
+		return 0;
+	}
+
+	/**
+	 * moves items between two neighbor blocks so their counts differ by at most one
+	 * @param lower  the block holding the smaller keys
+	 * @param upper  lower's successor
+	 */
+	private static void balanceBlocks(Block lower, Block upper) {
+		int target = (lower.count + upper.count) / 2;
+		if(lower.count < target) {
+			int moved = target - lower.count;
+			System.arraycopy(upper.keys, 0, lower.keys, lower.count, moved);
+			System.arraycopy(upper.values, 0, lower.values, lower.count, moved);
+			upper.count -= moved;
+			System.arraycopy(upper.keys, moved, upper.keys, 0, upper.count);
+			System.arraycopy(upper.values, moved, upper.values, 0, upper.count);
+			Arrays.fill(upper.values, upper.count, upper.count + moved, null);
+			lower.count = target;
+		} else {
+			int moved = lower.count - target;
+			System.arraycopy(upper.keys, 0, upper.keys, moved, upper.count);
+			System.arraycopy(upper.values, 0, upper.values, moved, upper.count);
+			System.arraycopy(lower.keys, target, upper.keys, 0, moved);
+			System.arraycopy(lower.values, target, upper.values, 0, moved);
+			Arrays.fill(lower.values, target, lower.count, null);
+			upper.count += moved;
+			lower.count = target;
+		}
+	}
+
+	/**
+	 * unlinks the (emptied) block x from the tree and rebalances.
+	 * if x has two children, x takes over its successor's items and the successor is unlinked instead
+	 * @return number of rebalance steps
+	 */
+	private int removeBlock(Block x) {
+		this.blocks--;
+		if(x.left != null && x.right != null) {
+			Block successor = x.right;
+			while(successor.left != null) {
+				successor = successor.left;
+			}
+			x.keys = successor.keys;
+			x.values = successor.values;
+			x.count = successor.count;
+			x = successor;
+		}
+
+		Block child = x.left != null ? x.left : x.right;
+		Block p = x.parent;
+		if(child != null) {
+			child.parent = p;
+		}
+		if(p == null) {
+			this.root = child;
+			return 0;
+		}
+		boolean left = p.left == x;
+		if(left) {
+			p.left = child;
+		} else {
+			p.right = child;
+		}
+		recount(p);
+		return reBalanceDelete(p, left);
+	}
+
+	/**
+	 * Rebalances the tree after the leaf block x was linked in,
+	 * promoting up the path while a 0-child has a 1-child sibling, then rotating at most twice
+	 * @return number of rebalance steps
+	 */
+	private int reBalanceInsert(Block x) {
+		int counter = 0;
+		Block p = x.parent;
+		while(p != null && p.rank == x.rank) {
+			boolean left = p.left == x;
+			Block sibling = left ? p.right : p.left;
+
+			// Case 1 - promoting p:
+			if(p.rank - rank(sibling) == 1) {
+				p.rank++;
+				counter++;
+				x = p;
+				p = x.parent;
+				continue;
+			}
+
+			// Case 2 - x's inner child is a 2-child, x takes p's place and rank:
+			Block inner = left ? x.right : x.left;
+			if(x.rank - rank(inner) == 2) {
+				rotateUp(x);
+				p.rank--;
+				return counter + 1;
+			}
+
+			// Case 3 - the inner child takes p's place and rank:
+			rotateUp(inner);
+			rotateUp(inner);
+			inner.rank++;
+			x.rank--;
+			p.rank--;
+			return counter + 2;
+		}
+		return counter;
+	}
+
+	/**
+	 * Rebalances the tree after p's child on the given side lost a rank,
+	 * demoting up the path, then rotating at most twice
+	 * @return number of rebalance steps
+	 */
+	private int reBalanceDelete(Block p, boolean left) {
+		int counter = 0;
+
+		// Case 1 - p became a 2,2 leaf, demoting it:
+		if(p.left == null && p.right == null && p.rank == 1) {
+			p.rank = 0;
+			counter++;
+			Block g = p.parent;
+			if(g != null) {
+				left = g.left == p;
+			}
+			p = g;
+		}
+
+		while(p != null) {
+			Block x = left ? p.left : p.right;
+			if(p.rank - rank(x) != 3) {
+				return counter;
+			}
+			Block sibling = left ? p.right : p.left;
+
+			// Case 2 - the sibling is a 2-child, demoting p:
+			if(p.rank - rank(sibling) == 2) {
+				p.rank--;
+				counter++;
+			} else {
+				Block outer = left ? sibling.right : sibling.left;
+				Block inner = left ? sibling.left : sibling.right;
+
+				// Case 3 - the sibling is 2,2, demoting both:
+				if(sibling.rank - rank(outer) == 2 && sibling.rank - rank(inner) == 2) {
+					p.rank--;
+					sibling.rank--;
+					counter += 2;
+				}
+
+				// Case 4 - the sibling's outer child is a 1-child, the sibling takes p's place:
+				else if(sibling.rank - rank(outer) == 1) {
+					rotateUp(sibling);
+					sibling.rank++;
+					p.rank--;
+					if(p.left == null && p.right == null) {
+						// p would be a 2,2 leaf otherwise:
+						p.rank--;
+					}
+					return counter + 1;
+				}
+
+				// Case 5 - the sibling's inner child takes p's place:
+				else {
+					rotateUp(inner);
+					rotateUp(inner);
+					inner.rank += 2;
+					sibling.rank--;
+					p.rank -= 2;
+					return counter + 2;
+				}
+			}
+
+			Block g = p.parent;
+			if(g != null) {
+				left = g.left == p;
+			}
+			p = g;
+		}
+		return counter;
+	}
+
+	/**
+	 * rotates x above its parent, keeping the subtree counts. ranks are left for the caller
+	 */
+	private void rotateUp(Block x) {
+		Block p = x.parent;
+		Block g = p.parent;
+		if(p.left == x) {
+			p.left = x.right;
+			if(p.left != null) {
+				p.left.parent = p;
+			}
+			x.right = p;
+		} else {
+			p.right = x.left;
+			if(p.right != null) {
+				p.right.parent = p;
+			}
+			x.left = p;
+		}
+		p.parent = x;
+		x.parent = g;
+		if(g == null) {
+			this.root = x;
+		} else if(g.left == p) {
+			g.left = x;
+		} else {
+			g.right = x;
+		}
+		p.calculateSubTreeCount();
+		x.calculateSubTreeCount();
+	}
+
+	/**
+	 * recomputes the subtree counts of b and all its ancestors
+	 */
+	private static void recount(Block b) {
+		for(; b != null; b = b.parent) {
+			b.calculateSubTreeCount();
+		}
+	}
+
+	/**
+	 * @return rank of b, -1 for a missing child
+	 */
+	private static int rank(Block b) {
+		return b == null ? -1 : b.rank;
+	}
+
+	/**
+	 * @return number of items in b's subtree, 0 for a missing child
+	 */
+	private static int count(Block b) {
+		return b == null ? 0 : b.subTreeCount;
+	}
+
+	/**
+	 * @return the block holding the next bigger keys, null if b is the last block
+	 */
+	private static Block successor(Block b) {
+		if(b.right != null) {
+			b = b.right;
+			while(b.left != null) {
+				b = b.left;
+			}
+			return b;
+		}
+		while(b.parent != null && b.parent.right == b) {
+			b = b.parent;
+		}
+		return b.parent;
+	}
+
+	/**
+	 * @return the block holding the next smaller keys, null if b is the first block
+	 */
+	private static Block predecessor(Block b) {
+		if(b.left != null) {
+			b = b.left;
+			while(b.right != null) {
+				b = b.right;
+			}
+			return b;
+		}
+		while(b.parent != null && b.parent.left == b) {
+			b = b.parent;
+		}
+		return b.parent;
+	}
+
+	/**
+	 * @return the block holding the smallest keys, null if the tree is empty
+	 */
+	private Block firstBlock() {
+		Block curr = this.root;
+		while(curr != null && curr.left != null) {
+			curr = curr.left;
+		}
+		return curr;
+	}
+
+	/**
+	 * @return the block holding the largest keys, null if the tree is empty
+	 */
+	private Block lastBlock() {
+		Block curr = this.root;
+		while(curr != null && curr.right != null) {
+			curr = curr.right;
+		}
+		return curr;
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * @return the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String min() {
+		Block first = firstBlock();
+		return first == null ? null : first.values[0];
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * @return the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String max() {
+		Block last = lastBlock();
+		return last == null ? null : last.values[last.count - 1];
+	}
+
+	/**
+	 * public String select(int i)
+	 *
+	 * @return the info of the i'th smallest key (1 based), null if i is out of range. O(log n)
+	 */
+	public String select(int i) {
+		Block curr = this.root;
+		while(curr != null && i > 0) {
+			int leftCount = count(curr.left);
+			if(i <= leftCount) {
+				curr = curr.left;
+			} else if(i <= leftCount + curr.count) {
+				return curr.values[i - leftCount - 1];
+			} else {
+				i -= leftCount + curr.count;
+				curr = curr.right;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * public Integer selectKey(int i)
+	 *
+	 * @return the i'th smallest key (1 based), null if i is out of range. O(log n)
+	 */
+	public Integer selectKey(int i) {
+		Block curr = this.root;
+		while(curr != null && i > 0) {
+			int leftCount = count(curr.left);
+			if(i <= leftCount) {
+				curr = curr.left;
+			} else if(i <= leftCount + curr.count) {
+				return curr.keys[i - leftCount - 1];
+			} else {
+				i -= leftCount + curr.count;
+				curr = curr.right;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * public int rank(int k)
+	 *
+	 * @return number of keys in the tree that are strictly smaller than k, O(log n)
+	 */
+	public int rank(int k) {
+		return countBelow(k, false);
+	}
+
+	/**
+	 * public int countInRange(int lo, int hi)
+	 *
+	 * @return number of keys k in the tree s.t lo <= k <= hi (0 if lo > hi), O(log n)
+	 */
+	public int countInRange(int lo, int hi) {
+		if(lo > hi) {
+			return 0;
+		}
+		return countBelow(hi, true) - countBelow(lo, false);
+	}
+
+	/**
+	 * called by {@link #rank(int)} and {@link #countInRange(int, int)}
+	 * @return number of keys < k (<= k if inclusive)
+	 */
+	private int countBelow(int k, boolean inclusive) {
+		int counter = 0;
+		Block curr = this.root;
+		while(curr != null) {
+			if(k < curr.keys[0]) {
+				curr = curr.left;
+			} else if(k > curr.keys[curr.count - 1]) {
+				counter += count(curr.left) + curr.count;
+				curr = curr.right;
+			} else {
+				int index = curr.indexOf(k);
+				if(inclusive && curr.keys[index] == k) {
+					index++;
+				}
+				return counter + count(curr.left) + index;
+			}
+		}
+		return counter;
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * @return a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public int[] keysToArray() {
+		int[] arr = new int[this.size];
+		int offset = 0;
+		for(Block b = firstBlock(); b != null; b = successor(b)) {
+			System.arraycopy(b.keys, 0, arr, offset, b.count);
+			offset += b.count;
+		}
+		return arr;
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * @return an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray() {
+		String[] arr = new String[this.size];
+		int offset = 0;
+		for(Block b = firstBlock(); b != null; b = successor(b)) {
+			System.arraycopy(b.values, 0, arr, offset, b.count);
+			offset += b.count;
+		}
+		return arr;
+	}
+
+	/**
+	 * public boolean isValid()
+	 *
+	 * checks the WAVL rank rules between blocks, the parent links, the subtree counts,
+	 * the key order and that every block but a single one is at least a quarter full, O(n)
+	 * @return true iff the tree is valid
+	 */
+	public boolean isValid() {
+		if(this.root == null) {
+			return this.size == 0 && this.blocks == 0;
+		}
+		return this.root.parent == null && count(this.root) == this.size
+				&& isValid(this.root, Long.MIN_VALUE, Long.MAX_VALUE) == this.blocks;
+	}
+
+	/**
+	 * called by {@link #isValid()}
+	 * @return number of blocks in b's subtree, -1 if it is not valid
+	 */
+	private int isValid(Block b, long lo, long hi) {
+		if(b == null) {
+			return 0;
+		}
+		if(b.count == 0 || (b.count < MIN_FILL && this.blocks > 1) || b.keys[0] <= lo || b.keys[b.count - 1] >= hi
+				|| b.subTreeCount != b.count + count(b.left) + count(b.right)
+				|| (b.left != null && b.left.parent != b) || (b.right != null && b.right.parent != b)) {
+			return -1;
+		}
+		for(int i = 1; i < b.count; i++) {
+			if(b.keys[i] <= b.keys[i - 1]) {
+				return -1;
+			}
+		}
+		int leftDiff = b.rank - rank(b.left);
+		int rightDiff = b.rank - rank(b.right);
+		boolean leaf = b.left == null && b.right == null;
+		if(leaf ? b.rank != 0 : leftDiff < 1 || leftDiff > 2 || rightDiff < 1 || rightDiff > 2) {
+			return -1;
+		}
+		int left = isValid(b.left, lo, b.keys[0]);
+		int right = isValid(b.right, b.keys[b.count - 1], hi);
+		return left < 0 || right < 0 ? -1 : left + right + 1;
+	}
+
+	/**
+	 * a tree node: up to BLOCK_SIZE items sorted by key
+	 */
+	private static class Block {
+		private int[] keys = new int[BLOCK_SIZE];
+		private String[] values = new String[BLOCK_SIZE];
+		private int count;
+		private int rank;
+		private int subTreeCount;
+		private Block left;
+		private Block right;
+		private Block parent;
+
+		/**
+		 * counts the keys below k with no early exit, a short loop the JIT can vectorize
+		 * @return index of the first key >= k, count if there is none
+		 */
+		private int indexOf(int k) {
+			int index = 0;
+			for(int i = 0; i < this.count; i++) {
+				index += this.keys[i] < k ? 1 : 0;
+			}
+			return index;
+		}
+
+		private void insertAt(int index, int k, String v) {
+			System.arraycopy(this.keys, index, this.keys, index + 1, this.count - index);
+			System.arraycopy(this.values, index, this.values, index + 1, this.count - index);
+			this.keys[index] = k;
+			this.values[index] = v;
+			this.count++;
+		}
+
+		private void removeAt(int index) {
+			this.count--;
+			System.arraycopy(this.keys, index + 1, this.keys, index, this.count - index);
+			System.arraycopy(this.values, index + 1, this.values, index, this.count - index);
+			this.values[this.count] = null;
+		}
+
+		/**
+		 * calculates and updates subTreeCount of this block only
+		 */
+		private void calculateSubTreeCount() {
+			this.subTreeCount = this.count + count(this.left) + count(this.right);
+		}
+	}
+}
@@ -0,0 +1,271 @@
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ *
+ * ConcurrentWAVLTree
+ *
+ * A thread safe {@link WAVLTree} for many readers and few writers.
+ * Writers (insert, delete and the rotations they trigger) hold the write lock of a StampedLock.
+ * Queries first run without any lock under an optimistic stamp and only take the read lock
+ * if a writer got in the way, so readers never block each other.
+ *
+ */
+public class ConcurrentWAVLTree {
+	/**
+	 * a WAVL tree of n <= 2^31 items is at most 2 log n high,
+	 * so a longer walk can only come from a torn view of a rotation
+	 */
+	private static final int MAX_DEPTH = 64;
+	private static final int OPTIMISTIC_ATTEMPTS = 3;
+
+	private final WAVLTree tree;
+	private final StampedLock lock;
+
+	/**
+	 * empty constructor  sets default values
+	 */
+	public ConcurrentWAVLTree() {
+		this.tree = new WAVLTree();
+		this.lock = new StampedLock();
+	}
+
+	/**
+	 * a query run on a root node, possibly against a tree that is being changed
+	 */
+	private interface Query<T> {
+		T run(WAVLTree.WAVLNode root);
+	}
+
+	/**
+	 * runs the query under an optimistic stamp, falling back to the read lock
+	 * after {@link #OPTIMISTIC_ATTEMPTS} invalidated attempts
+	 */
+	private <T> T read(Query<T> query) {
+		for(int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+			long stamp = lock.tryOptimisticRead();
+			if(stamp == 0) {
+				continue;
+			}
+			T result = query.run(tree.getRoot());
+			if(lock.validate(stamp)) {
+				return result;
+			}
+		}
+		long stamp = lock.readLock();
+		try {
+			return query.run(tree.getRoot());
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * nodes seen while a writer is active may be half built, so null counts as an external leaf
+	 */
+	private static boolean isInner(WAVLTree.WAVLNode n) {
+		return n != null && n.isInnerNode();
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 */
+	public boolean empty() {
+		return size() == 0;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size() {
+		long stamp = lock.tryOptimisticRead();
+		int size = tree.size();
+		if(!lock.validate(stamp)) {
+			stamp = lock.readLock();
+			try {
+				size = tree.size();
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null. lock free unless a writer interferes
+	 */
+	public String search(int k) {
+		return read(root -> {
+			WAVLTree.WAVLNode curr = root;
+			for(int depth = 0; isInner(curr) && depth < MAX_DEPTH; depth++) {
+				if(curr.getKey() == k) {
+					return curr.getValue();
+				}
+				curr = k < curr.getKey() ? curr.getLeft() : curr.getRight();
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * same as {@link WAVLTree#insert(int, String)}, under the write lock
+	 */
+	public int insert(int k, String i) {
+		long stamp = lock.writeLock();
+		try {
+			return tree.insert(k, i);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * same as {@link WAVLTree#delete(int)}, under the write lock
+	 */
+	public int delete(int k) {
+		long stamp = lock.writeLock();
+		try {
+			return tree.delete(k);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * public String select(int i)
+	 *
+	 * @return the info of the i'th smallest key (1 based), null if i is out of range
+	 */
+	public String select(int i) {
+		WAVLTree.WAVLNode node = read(root -> selectNode(root, i));
+		return node == null ? null : node.getValue();
+	}
+
+	/**
+	 * public Integer selectKey(int i)
+	 *
+	 * @return the i'th smallest key (1 based), null if i is out of range
+	 */
+	public Integer selectKey(int i) {
+		return keyOf(read(root -> selectNode(root, i)));
+	}
+
+	/**
+	 * walks down by subtree sizes, see {@link WAVLTree#select(int)}
+	 */
+	private static WAVLTree.WAVLNode selectNode(WAVLTree.WAVLNode root, int i) {
+		WAVLTree.WAVLNode curr = root;
+		for(int depth = 0; isInner(curr) && depth < MAX_DEPTH; depth++) {
+			WAVLTree.WAVLNode left = curr.getLeft();
+			int leftSize = isInner(left) ? left.getSubtreeSize() : 0;
+			if(i == leftSize + 1) {
+				return curr;
+			}
+			if(i <= leftSize) {
+				curr = left;
+			} else {
+				i -= leftSize + 1;
+				curr = curr.getRight();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * public Integer floorKey(int k)
+	 *
+	 * @return the largest key <= k (return null if there is none)
+	 */
+	public Integer floorKey(int k) {
+		return keyOf(read(root -> boundNode(root, k, true, true)));
+	}
+
+	/**
+	 * public Integer ceilingKey(int k)
+	 *
+	 * @return the smallest key >= k (return null if there is none)
+	 */
+	public Integer ceilingKey(int k) {
+		return keyOf(read(root -> boundNode(root, k, false, true)));
+	}
+
+	/**
+	 * public Integer lowerKey(int k)
+	 *
+	 * @return the largest key < k (return null if there is none)
+	 */
+	public Integer lowerKey(int k) {
+		return keyOf(read(root -> boundNode(root, k, true, false)));
+	}
+
+	/**
+	 * public Integer higherKey(int k)
+	 *
+	 * @return the smallest key > k (return null if there is none)
+	 */
+	public Integer higherKey(int k) {
+		return keyOf(read(root -> boundNode(root, k, false, false)));
+	}
+
+	/**
+	 * single root to leaf pass, see {@link WAVLTree#floorNode(int)}
+	 */
+	private static WAVLTree.WAVLNode boundNode(WAVLTree.WAVLNode root, int k, boolean below, boolean inclusive) {
+		WAVLTree.WAVLNode best = null;
+		WAVLTree.WAVLNode curr = root;
+		for(int depth = 0; isInner(curr) && depth < MAX_DEPTH; depth++) {
+			if(inclusive && curr.getKey() == k) {
+				return curr;
+			}
+			if(below ? curr.getKey() < k : curr.getKey() > k) {
+				best = curr;
+				curr = below ? curr.getRight() : curr.getLeft();
+			} else {
+				curr = below ? curr.getLeft() : curr.getRight();
+			}
+		}
+		return best;
+	}
+
+	private static Integer keyOf(WAVLTree.WAVLNode node) {
+		return node == null ? null : Integer.valueOf(node.getKey());
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * same as {@link WAVLTree#keysToArray()}, under the read lock
+	 */
+	public int[] keysToArray() {
+		long stamp = lock.readLock();
+		try {
+			return tree.keysToArray();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * same as {@link WAVLTree#infoToArray()}, under the read lock
+	 */
+	public String[] infoToArray() {
+		long stamp = lock.readLock();
+		try {
+			return tree.infoToArray();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+}
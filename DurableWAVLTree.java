@@ -0,0 +1,681 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ *
+ * DurableWAVLTree
+ *
+ * A thread safe {@link PersistentWAVLTree} whose inserts and deletes are kept in an append-only write-ahead log.
+ * Its directory holds snapshots written with {@link PersistentWAVLTree#writeSnapshot(Path)} and logs,
+ * both numbered by generation: wal-N holds the changes made after snapshot-N.
+ * Opening the directory loads the newest snapshot and replays the logs from its generation on,
+ * dropping a torn record at the end of the last log.
+ * The directory is forced after a log is created and after a snapshot is moved in, before anything is deleted.
+ * A change is applied in memory, appended to a buffer and written and forced to disk as {@link Durability} says.
+ * Callers waiting for the disk share fsyncs: whoever forces the log takes every record appended
+ * up to then, so concurrent writers pay for one fsync per batch (group commit).
+ * Once the current log grows past the compaction threshold a new generation is started,
+ * and a snapshot of the tree is written in the background, after which the older files are deleted.
+ * The tree is persistent, so the generation's version is taken in O(1) under the lock
+ * and the snapshot is written from it while inserts and deletes go on.
+ *
+ * Log records are little endian: type (1 byte), key (4 bytes), value length (4 bytes, -1 for null or a delete),
+ * the value in UTF-8, and a CRC32C of all of these (4 bytes).
+ *
+ */
+public class DurableWAVLTree implements AutoCloseable {
+	/**
+	 * when inserts and deletes reach the disk
+	 */
+	public enum Durability {
+		/** every change returns once it is on disk, concurrent changes share an fsync */
+		SYNC,
+		/** every {@link DurableWAVLTree#setBatchSize(int)}'th change forces the log, and so does commit() */
+		BATCH,
+		/** a background thread forces the log every {@link DurableWAVLTree#setSyncInterval(long)} milliseconds, and so does commit() */
+		TIMED
+	}
+
+	private static final byte INSERT = 1;
+	private static final byte DELETE = 2;
+	private static final int RECORD_HEADER = 9;
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+	private static final String LOG_PREFIX = "wal-";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final long MAX_LOG_SIZE = 1L << 30;
+	private static final int REPLAY_BUFFER = 1 << 16; // grown for a record that does not fit
+
+	private final Path directory;
+	private final Durability durability;
+	private final PersistentWAVLTree tree;
+	private int batchSize;
+	private long syncInterval;
+	private long compactionThreshold;
+
+	private long generation;
+	private FileChannel log;
+	private long logSize; // bytes appended to the current log, written or not
+	private ByteBuffer pending; // records appended but not written yet
+	private ByteBuffer spare; // the other buffer, null while it is being written
+	private final CRC32C crc;
+	private long appended; // number of records appended
+	private long durable; // number of records forced to disk
+	private boolean syncing;
+	private boolean closed;
+	private IOException failure;
+	private IOException compactionFailure;
+	private long compactionDelay; // log bytes to wait for past the threshold, after a compaction could not start
+	private Thread compaction;
+	private Thread timer;
+
+	/**
+	 * opens (or creates) the tree kept in directory, recovering it from the newest snapshot and the logs after it
+	 * @throws IOException if the directory can not be read, or a snapshot or a log other than the last is corrupt
+	 */
+	public DurableWAVLTree(Path directory, Durability durability) throws IOException {
+		this.directory = directory;
+		this.durability = durability;
+		this.batchSize = 256;
+		this.syncInterval = 10;
+		this.compactionThreshold = 64L << 20;
+		this.pending = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		this.spare = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		this.crc = new CRC32C();
+
+		Files.createDirectories(directory);
+		long snapshot = -1;
+		List<Long> logs = new ArrayList<>();
+		List<Path> unfinished = new ArrayList<>();
+		try(DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for(Path file : files) {
+				String name = file.getFileName().toString();
+				if(name.startsWith(SNAPSHOT_PREFIX) && isGeneration(name.substring(SNAPSHOT_PREFIX.length()))) {
+					snapshot = Math.max(snapshot, Long.parseLong(name.substring(SNAPSHOT_PREFIX.length())));
+				} else if(name.startsWith(LOG_PREFIX) && isGeneration(name.substring(LOG_PREFIX.length()))) {
+					logs.add(Long.parseLong(name.substring(LOG_PREFIX.length())));
+				} else if(name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(TEMP_SUFFIX)) {
+					unfinished.add(file);
+				}
+			}
+		}
+		Collections.sort(logs);
+
+		this.tree = snapshot >= 0 ? PersistentWAVLTree.openSnapshot(snapshotPath(snapshot)) : new PersistentWAVLTree();
+		this.generation = Math.max(snapshot, 0);
+		for(int i = 0; i < logs.size(); i++) {
+			if(logs.get(i) >= this.generation) {
+				replay(logPath(logs.get(i)), i == logs.size() - 1);
+				this.generation = logs.get(i);
+			}
+		}
+		this.log = FileChannel.open(logPath(this.generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		this.logSize = this.log.size();
+		this.log.position(this.logSize);
+		// Left over from a compaction that was cut short:
+		for(Path file : unfinished) {
+			Files.deleteIfExists(file);
+		}
+		// The log may be new, and the newest snapshot may have been moved in just before a crash:
+		WAVLSnapshot.forceDirectory(directory);
+		if(snapshot > 0) {
+			deleteBefore(snapshot);
+		}
+
+		if(durability == Durability.TIMED) {
+			this.timer = new Thread(this::syncPeriodically, "wavl-log-sync");
+			this.timer.setDaemon(true);
+			this.timer.start();
+		}
+	}
+
+	private static boolean isGeneration(String s) {
+		return !s.isEmpty() && s.length() < 19 && s.chars().allMatch(Character::isDigit);
+	}
+
+	private Path snapshotPath(long generation) {
+		return this.directory.resolve(SNAPSHOT_PREFIX + generation);
+	}
+
+	private Path logPath(long generation) {
+		return this.directory.resolve(LOG_PREFIX + generation);
+	}
+
+	/**
+	 * applies the records of a log to the tree, reading it a buffer at a time, so a log of any size can be replayed.
+	 * a record that is cut off or fails its checksum ends the log; it is truncated there if it is the last one
+	 * @throws IOException if a log other than the last holds a bad record
+	 */
+	private void replay(Path path, boolean last) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long size = channel.size();
+			ByteBuffer records = ByteBuffer.allocate(REPLAY_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+			records.limit(0);
+			long start = 0; // where in the log records begins
+			int position = 0;
+			while(true) {
+				int end = recordEnd(records, position);
+				if(end < 0) {
+					long needed = recordSize(records, position);
+					if(records.limit() - position >= needed || start + position + needed > size) {
+						break; // corrupt, or cut off by the end of the log
+					}
+					if(needed > Integer.MAX_VALUE - 8) {
+						throw new IOException(path + " holds a record of " + needed + " bytes at byte " + (start + position) + ", too large to read");
+					}
+					// The record runs past the buffer: move it to the front, make room for all of it and read on
+					records.position(position);
+					records.compact();
+					start += position;
+					position = 0;
+					if(records.capacity() < needed) {
+						records.flip();
+						records = ByteBuffer.allocate((int) needed).order(ByteOrder.LITTLE_ENDIAN).put(records);
+					}
+					while(records.hasRemaining() && channel.read(records, start + records.position()) >= 0) {
+						// filling the buffer
+					}
+					records.flip();
+					continue;
+				}
+				int key = records.getInt(position + 1);
+				int length = records.getInt(position + 5);
+				if(records.get(position) == INSERT) {
+					String value = length < 0 ? null : new String(records.array(), position + RECORD_HEADER, length, StandardCharsets.UTF_8);
+					this.tree.insert(key, value);
+				} else {
+					this.tree.delete(key);
+				}
+				position = end;
+			}
+			long valid = start + position;
+			if(valid < size) {
+				if(!last) {
+					throw new IOException(path + " is corrupt at byte " + valid);
+				}
+				channel.truncate(valid);
+				channel.force(true);
+			}
+		}
+	}
+
+	/**
+	 * @return the bytes the record at position takes by its header, or the size of an empty record if the header is not in records.
+	 * a corrupt length gives a size too large to be in the log
+	 */
+	private static long recordSize(ByteBuffer records, int position) {
+		if(records.limit() - position < RECORD_HEADER) {
+			return RECORD_HEADER + 4;
+		}
+		int length = records.getInt(position + 5);
+		return RECORD_HEADER + (length < -1 ? Long.MAX_VALUE / 2 : Math.max(length, 0)) + 4;
+	}
+
+	/**
+	 * @return where the record at position ends, -1 if it is cut off or corrupt
+	 */
+	private int recordEnd(ByteBuffer records, int position) {
+		if(records.limit() - position < RECORD_HEADER + 4) {
+			return -1;
+		}
+		byte type = records.get(position);
+		int length = records.getInt(position + 5);
+		if((type != INSERT && type != DELETE) || length < -1 || records.limit() - position - RECORD_HEADER - 4 < length) {
+			return -1;
+		}
+		int checked = RECORD_HEADER + Math.max(length, 0);
+		this.crc.reset();
+		this.crc.update(records.array(), position, checked);
+		return records.getInt(position + checked) == (int) this.crc.getValue() ? position + checked + 4 : -1;
+	}
+
+	/**
+	 * setter, for {@link Durability#BATCH}
+	 * @param batchSize  number of changes per fsync
+	 * @throws IllegalArgumentException if batchSize < 1
+	 */
+	public synchronized void setBatchSize(int batchSize) {
+		if(batchSize < 1) {
+			throw new IllegalArgumentException("batch size " + batchSize + " < 1");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * setter, for {@link Durability#TIMED}
+	 * @param syncInterval  milliseconds between fsyncs
+	 * @throws IllegalArgumentException if syncInterval < 1
+	 */
+	public synchronized void setSyncInterval(long syncInterval) {
+		if(syncInterval < 1) {
+			throw new IllegalArgumentException("sync interval " + syncInterval + " < 1");
+		}
+		this.syncInterval = syncInterval;
+	}
+
+	/**
+	 * setter
+	 * @param compactionThreshold  log size in bytes after which a snapshot is written and a new log started
+	 * @throws IllegalArgumentException if compactionThreshold is not in 1..2^30
+	 */
+	public synchronized void setCompactionThreshold(long compactionThreshold) {
+		if(compactionThreshold < 1 || compactionThreshold > MAX_LOG_SIZE) {
+			throw new IllegalArgumentException("compaction threshold " + compactionThreshold + " is not in 1.." + MAX_LOG_SIZE);
+		}
+		this.compactionThreshold = compactionThreshold;
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * same as {@link PersistentWAVLTree#insert(int, String)}, logging the item if it was inserted
+	 * @throws IOException if the log could not be written, after which the tree takes no more changes
+	 */
+	public int insert(int k, String i) throws IOException {
+		int result;
+		long record;
+		synchronized(this) {
+			ensureWritable();
+			result = this.tree.insert(k, i);
+			if(result < 0) {
+				return -1;
+			}
+			record = append(INSERT, k, i);
+		}
+		afterAppend(record);
+		return result;
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * same as {@link PersistentWAVLTree#delete(int)}, logging the delete if k was found
+	 * @throws IOException if the log could not be written, after which the tree takes no more changes
+	 */
+	public int delete(int k) throws IOException {
+		int result;
+		long record;
+		synchronized(this) {
+			ensureWritable();
+			result = this.tree.delete(k);
+			if(result < 0) {
+				return -1;
+			}
+			record = append(DELETE, k, null);
+		}
+		afterAppend(record);
+		return result;
+	}
+
+	/**
+	 * public void commit()
+	 *
+	 * returns once every change made so far is on disk
+	 */
+	public void commit() throws IOException {
+		long record;
+		synchronized(this) {
+			ensureWritable();
+			record = this.appended;
+		}
+		awaitDurable(record);
+	}
+
+	/**
+	 * adds a record to the pending buffer, called while holding the lock
+	 * @return the record's number
+	 */
+	private long append(byte type, int k, String v) {
+		byte[] bytes = v == null ? null : v.getBytes(StandardCharsets.UTF_8);
+		int length = RECORD_HEADER + (bytes == null ? 0 : bytes.length) + 4;
+		if(this.pending.remaining() < length) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * this.pending.capacity(), this.pending.position() + length))
+					.order(ByteOrder.LITTLE_ENDIAN);
+			this.pending.flip();
+			larger.put(this.pending);
+			this.pending = larger;
+		}
+		int start = this.pending.position();
+		this.pending.put(type);
+		this.pending.putInt(k);
+		this.pending.putInt(bytes == null ? -1 : bytes.length);
+		if(bytes != null) {
+			this.pending.put(bytes);
+		}
+		this.crc.reset();
+		this.crc.update(this.pending.array(), start, length - 4);
+		this.pending.putInt((int) this.crc.getValue());
+		this.logSize += length;
+		return ++this.appended;
+	}
+
+	/**
+	 * makes the record durable if the durability asks for it now, and compacts if the log got too long
+	 */
+	private void afterAppend(long record) throws IOException {
+		boolean sync;
+		synchronized(this) {
+			sync = this.durability == Durability.SYNC || (this.durability == Durability.BATCH && record % this.batchSize == 0);
+		}
+		if(sync) {
+			awaitDurable(record);
+		}
+		synchronized(this) {
+			if(this.logSize >= this.compactionThreshold + this.compactionDelay && this.compaction == null && !this.closed) {
+				startCompaction();
+			}
+		}
+	}
+
+	/**
+	 * returns once the first record records are on disk.
+	 * if no one is forcing the log, the caller writes and forces everything pending, for all waiting callers;
+	 * otherwise it waits for that fsync, which may already cover its record
+	 */
+	private void awaitDurable(long record) throws IOException {
+		ByteBuffer batch;
+		FileChannel channel;
+		long batchEnd;
+		synchronized(this) {
+			while(this.syncing && this.durable < record) {
+				waitForSync();
+			}
+			if(this.failure != null) {
+				throw new IOException("the log could not be written", this.failure);
+			}
+			if(this.durable >= record) {
+				return;
+			}
+			this.syncing = true;
+			batch = this.pending;
+			this.pending = this.spare;
+			this.spare = null;
+			batchEnd = this.appended;
+			channel = this.log;
+		}
+
+		IOException error = null;
+		try {
+			writeAndForce(batch, channel);
+		} catch(IOException e) {
+			error = e;
+		}
+
+		synchronized(this) {
+			batch.clear();
+			this.spare = batch;
+			this.syncing = false;
+			if(error == null) {
+				this.durable = batchEnd;
+			} else {
+				this.failure = error;
+			}
+			notifyAll();
+		}
+		if(error != null) {
+			throw error;
+		}
+	}
+
+	private static void writeAndForce(ByteBuffer batch, FileChannel channel) throws IOException {
+		batch.flip();
+		while(batch.hasRemaining()) {
+			channel.write(batch);
+		}
+		channel.force(false);
+	}
+
+	/**
+	 * waits on the lock for an fsync in progress to end
+	 */
+	private void waitForSync() throws InterruptedIOException {
+		try {
+			wait();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for the log");
+		}
+	}
+
+	/**
+	 * ends the current generation, called while holding the lock:
+	 * forces what is pending into the current log, takes the tree's current version in O(1), starts the next log,
+	 * and leaves writing the snapshot of that version to a background thread.
+	 * if the next log can not be created the change that asked for the compaction is already in the current log,
+	 * so the caller is not failed: the current log goes on, the error is kept for {@link #close()},
+	 * and the next attempt waits until the log grew by another compaction threshold
+	 */
+	private void startCompaction() throws IOException {
+		while(this.syncing) {
+			waitForSync();
+		}
+		if(this.failure != null) {
+			return;
+		}
+		try {
+			writeAndForce(this.pending, this.log);
+		} catch(IOException e) {
+			this.failure = e;
+			throw e;
+		} finally {
+			this.pending.clear();
+		}
+		this.durable = this.appended;
+
+		PersistentWAVLTree version = this.tree.snapshot();
+		long next = this.generation + 1;
+		FileChannel nextLog;
+		try {
+			nextLog = openNextLog(logPath(next));
+		} catch(IOException e) {
+			this.compactionFailure = e;
+			this.compactionDelay = this.logSize;
+			return;
+		}
+		this.log.close();
+		this.log = nextLog;
+		this.generation = next;
+		this.logSize = 0;
+		this.compactionDelay = 0;
+
+		this.compaction = new Thread(() -> compact(next, version), "wavl-compaction");
+		this.compaction.setDaemon(true);
+		this.compaction.start();
+	}
+
+	/**
+	 * creates an empty log and forces its name to disk, since records forced into it are only durable once it is.
+	 * on failure the log is deleted again, so it can not stand after the current log and make its torn tail look corrupt
+	 */
+	private FileChannel openNextLog(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			WAVLSnapshot.forceDirectory(this.directory);
+			return channel;
+		} catch(IOException e) {
+			channel.close();
+			try {
+				Files.deleteIfExists(path);
+			} catch(IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * writes snapshot-generation from the version taken when the generation started, then deletes the older files;
+	 * the snapshot's name is forced to disk first, so a crash can not lose both it and the logs it replaces.
+	 * if it fails the older files stay, so nothing is lost, and the failure is reported by {@link #close()}
+	 */
+	private void compact(long generation, PersistentWAVLTree version) {
+		try {
+			version.writeSnapshot(snapshotPath(generation));
+			deleteBefore(generation);
+		} catch(IOException e) {
+			synchronized(this) {
+				this.compactionFailure = e;
+			}
+		} finally {
+			synchronized(this) {
+				this.compaction = null;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * deletes the snapshots and logs of generations before generation
+	 */
+	private void deleteBefore(long generation) throws IOException {
+		try(DirectoryStream<Path> files = Files.newDirectoryStream(this.directory)) {
+			for(Path file : files) {
+				String name = file.getFileName().toString();
+				String number = name.startsWith(SNAPSHOT_PREFIX) ? name.substring(SNAPSHOT_PREFIX.length())
+						: name.startsWith(LOG_PREFIX) ? name.substring(LOG_PREFIX.length()) : "";
+				if(isGeneration(number) && Long.parseLong(number) < generation) {
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * called by the timer thread of {@link Durability#TIMED}.
+	 * it waits on the lock rather than sleeping, so close() can wake it without an interrupt,
+	 * which would close the log channel if it hit a write
+	 */
+	private void syncPeriodically() {
+		while(true) {
+			long record;
+			synchronized(this) {
+				if(this.closed || this.failure != null) {
+					return;
+				}
+				try {
+					wait(this.syncInterval);
+				} catch(InterruptedException e) {
+					return;
+				}
+				if(this.closed) {
+					return;
+				}
+				record = this.appended;
+			}
+			try {
+				awaitDurable(record);
+			} catch(IOException e) {
+				// kept in failure, the next change reports it
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @throws IllegalStateException if the tree was closed
+	 * @throws IOException if an earlier log write failed
+	 */
+	private void ensureWritable() throws IOException {
+		if(this.closed) {
+			throw new IllegalStateException("tree is closed");
+		}
+		if(this.failure != null) {
+			throw new IOException("the log could not be written", this.failure);
+		}
+	}
+
+	/**
+	 * forces every change to disk, waits for a running compaction and releases the log.
+	 * the tree can not be changed after it was closed.
+	 * @throws IOException if the last changes could not be written, or a compaction failed
+	 */
+	@Override
+	public void close() throws IOException {
+		long record;
+		synchronized(this) {
+			if(this.closed) {
+				return;
+			}
+			this.closed = true;
+			record = this.appended;
+			notifyAll();
+		}
+		try {
+			if(this.timer != null) {
+				this.timer.join();
+			}
+			awaitDurable(record);
+			synchronized(this) {
+				while(this.compaction != null) {
+					wait();
+				}
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while closing");
+		} finally {
+			this.log.close();
+		}
+		if(this.compactionFailure != null) {
+			throw this.compactionFailure;
+		}
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public synchronized String search(int k) {
+		return this.tree.search(k);
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 */
+	public synchronized boolean empty() {
+		return this.tree.empty();
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 */
+	public synchronized int size() {
+		return this.tree.size();
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * same as {@link PersistentWAVLTree#keysToArray()}
+	 */
+	public synchronized int[] keysToArray() {
+		return this.tree.keysToArray();
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * same as {@link PersistentWAVLTree#infoToArray()}
+	 */
+	public synchronized String[] infoToArray() {
+		return this.tree.infoToArray();
+	}
+}
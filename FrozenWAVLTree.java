@@ -0,0 +1,295 @@
+import java.util.Arrays;
+
+/**
+ *
+ * FrozenWAVLTree
+ *
+ * An immutable, read-optimized copy of a {@link WAVLTree}, made by {@link WAVLTree#freeze()}.
+ * The keys are laid out in Eytzinger (breadth first) order: the children of slot i are slots 2i and 2i+1,
+ * so a search walks down one implicit complete tree with no pointers to follow,
+ * the first levels share a few cache lines, and every step is a compare and a shift with no branch on the key.
+ * Keys and values are also kept in sorted order, for select and range scans that read memory sequentially.
+ * A frozen tree holds at most {@link #MAX_SIZE} items, so the slot indices of a descent stay ints.
+ *
+ */
+public class FrozenWAVLTree {
+	public static final int MAX_SIZE = (1 << 30) - 1; // a descent goes up to slot 2n+1
+	private final int[] eytzinger; // eytzinger[1..n], slot 0 unused
+	private final int[] order; // order[i] is the sorted position of eytzinger[i]
+	private final int[] keys;
+	private final String[] values;
+
+	private FrozenWAVLTree(int[] keys, String[] values) {
+		checkSize(keys.length);
+		this.keys = keys;
+		this.values = values;
+		this.eytzinger = new int[keys.length + 1];
+		this.order = new int[keys.length + 1];
+		layout(1, 0);
+	}
+
+	/**
+	 * public static FrozenWAVLTree fromSorted(int[] keys, String[] values)
+	 *
+	 * builds a frozen tree holding keys[i] with values[i] for every i, in O(n).
+	 * the arrays are copied.
+	 * @param keys  strictly increasing keys
+	 * @param values  values[i] is the value of keys[i]
+	 * @throws IllegalArgumentException if the lengths differ, keys are not strictly increasing or there are more than {@link #MAX_SIZE}
+	 */
+	public static FrozenWAVLTree fromSorted(int[] keys, String[] values) {
+		checkSize(keys.length);
+		if(keys.length != values.length) {
+			throw new IllegalArgumentException("got " + keys.length + " keys and " + values.length + " values");
+		}
+		for(int i = 1; i < keys.length; i++) {
+			if(keys[i] <= keys[i - 1]) {
+				throw new IllegalArgumentException("keys are not strictly increasing at " + keys[i]);
+			}
+		}
+		return new FrozenWAVLTree(keys.clone(), values.clone());
+	}
+
+	/**
+	 * @throws IllegalArgumentException if n > {@link #MAX_SIZE}
+	 */
+	static void checkSize(int n) {
+		if(n > MAX_SIZE) {
+			throw new IllegalArgumentException("a frozen tree holds at most " + MAX_SIZE + " items, got " + n);
+		}
+	}
+
+	/**
+	 * called by {@link WAVLTree#freeze()} with fresh sorted arrays it hands over
+	 */
+	static FrozenWAVLTree ofSorted(int[] keys, String[] values) {
+		return new FrozenWAVLTree(keys, values);
+	}
+
+	/**
+	 * fills the Eytzinger subtree of slot i with the sorted keys from position next on, in order
+	 * @return the next sorted position to place
+	 */
+	private int layout(int i, int next) {
+		if(i >= this.eytzinger.length) {
+			return next;
+		}
+		next = layout(2 * i, next);
+		this.eytzinger[i] = this.keys[next];
+		this.order[i] = next;
+		return layout(2 * i + 1, next + 1);
+	}
+
+	/**
+	 * branch-free descent of the Eytzinger layout
+	 * @param inclusive  whether a key equal to k counts
+	 * @return sorted position of the first key >= k (> k if not inclusive), size() if there is none
+	 */
+	private int position(int k, boolean inclusive) {
+		int[] eytzinger = this.eytzinger;
+		int n = this.keys.length;
+		int i = 1;
+		if(inclusive) {
+			while(i <= n) {
+				i = (i << 1) | (eytzinger[i] < k ? 1 : 0);
+			}
+		} else {
+			while(i <= n) {
+				i = (i << 1) | (eytzinger[i] <= k ? 1 : 0);
+			}
+		}
+		// The answer is where the walk last went left, dropping the right turns after it and that left turn:
+		i >>>= Integer.numberOfTrailingZeros(~i) + 1;
+		return i == 0 ? n : this.order[i];
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 */
+	public boolean empty() {
+		return this.keys.length == 0;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of items in the tree.
+	 */
+	public int size() {
+		return this.keys.length;
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null. O(log n)
+	 */
+	public String search(int k) {
+		int pos = position(k, true);
+		return pos < this.keys.length && this.keys[pos] == k ? this.values[pos] : null;
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * @return the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String min() {
+		return select(1);
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * @return the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String max() {
+		return select(this.keys.length);
+	}
+
+	/**
+	 * public String select(int i)
+	 *
+	 * @return the info of the i'th smallest key (1 based), null if i is out of range. O(1)
+	 */
+	public String select(int i) {
+		return i <= 0 || i > this.keys.length ? null : this.values[i - 1];
+	}
+
+	/**
+	 * public Integer selectKey(int i)
+	 *
+	 * @return the i'th smallest key (1 based), null if i is out of range. O(1)
+	 */
+	public Integer selectKey(int i) {
+		return keyAt(i - 1);
+	}
+
+	/**
+	 * public int rank(int k)
+	 *
+	 * @return number of keys in the tree that are strictly smaller than k, O(log n)
+	 */
+	public int rank(int k) {
+		return position(k, true);
+	}
+
+	/**
+	 * public int countInRange(int lo, int hi)
+	 *
+	 * @return number of keys k in the tree s.t lo <= k <= hi (0 if lo > hi), O(log n)
+	 */
+	public int countInRange(int lo, int hi) {
+		if(lo > hi) {
+			return 0;
+		}
+		return position(hi, false) - position(lo, true);
+	}
+
+	/**
+	 * public Integer floorKey(int k)
+	 *
+	 * @return the largest key <= k (return null if there is none)
+	 */
+	public Integer floorKey(int k) {
+		return keyAt(position(k, false) - 1);
+	}
+
+	/**
+	 * public Integer ceilingKey(int k)
+	 *
+	 * @return the smallest key >= k (return null if there is none)
+	 */
+	public Integer ceilingKey(int k) {
+		return keyAt(position(k, true));
+	}
+
+	/**
+	 * public Integer lowerKey(int k)
+	 *
+	 * @return the largest key < k (return null if there is none)
+	 */
+	public Integer lowerKey(int k) {
+		return keyAt(position(k, true) - 1);
+	}
+
+	/**
+	 * public Integer higherKey(int k)
+	 *
+	 * @return the smallest key > k (return null if there is none)
+	 */
+	public Integer higherKey(int k) {
+		return keyAt(position(k, false));
+	}
+
+	/**
+	 * @return the key at sorted position pos, null if pos is out of range
+	 */
+	private Integer keyAt(int pos) {
+		return pos < 0 || pos >= this.keys.length ? null : Integer.valueOf(this.keys[pos]);
+	}
+
+	/**
+	 * public void forEachInRange(int lo, int hi, Visitor visitor)
+	 *
+	 * visits the items with lo <= key <= hi in ascending key order,
+	 * O(log n) to find the first one, then a sequential scan of the sorted arrays
+	 */
+	public void forEachInRange(int lo, int hi, Visitor visitor) {
+		if(lo > hi) {
+			return;
+		}
+		int end = position(hi, false);
+		for(int pos = position(lo, true); pos < end; pos++) {
+			visitor.visit(this.keys[pos], this.values[pos]);
+		}
+	}
+
+	/**
+	 * public int[] keysInRange(int lo, int hi)
+	 *
+	 * @return the sorted keys k s.t lo <= k <= hi (empty if lo > hi)
+	 */
+	public int[] keysInRange(int lo, int hi) {
+		if(lo > hi) {
+			return new int[0];
+		}
+		int start = position(lo, true);
+		return Arrays.copyOfRange(this.keys, start, Math.max(start, position(hi, false)));
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * @return a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public int[] keysToArray() {
+		return this.keys.clone();
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * @return an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray() {
+		return this.values.clone();
+	}
+
+	/**
+	 * public interface Visitor
+	 *
+	 * receives the items of a range scan, see {@link #forEachInRange(int, int, Visitor)}
+	 */
+	public interface Visitor {
+		void visit(int key, String value);
+	}
+}
@@ -0,0 +1,705 @@
+import java.util.function.IntFunction;
+
+/**
+ *
+ * GenericWAVLTree
+ *
+ * A WAVL Tree over any Comparable key type, the generic twin of {@link WAVLTree}.
+ * External leaves are detected by identity with a single shared sentinel,
+ * never by key value, so every key value is valid.
+ * For int and long keys prefer {@link IntWAVLTree} and {@link LongWAVLTree}, which don't box keys.
+ *
+ */
+public class GenericWAVLTree<K extends Comparable<K>, V> {
+	/**
+	 * the single external leaf shared by every tree:
+	 * rank -1, subTreeSize 0, no children and no parent
+	 */
+	private static final Node<?, ?> EXTERNAL = new Node<>(null, null, -1, 0);
+
+	private final Node<K, V> external;
+	private Node<K, V> root;
+	private int size;
+
+	/**
+	 * empty constructor  sets default values
+	 */
+	@SuppressWarnings("unchecked")
+	public GenericWAVLTree() {
+		this.external = (Node<K, V>) EXTERNAL;
+		this.root = external;
+		this.size = 0;
+	}
+
+	/**
+	 *
+	 * @return true iff size == 0
+	 */
+	public boolean empty() {
+		return size==0;
+	}
+
+	/**
+	 * public int size()
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * public Node<K, V> getRoot()
+	 *
+	 * @return the root node, or the external leaf if the tree is empty
+	 */
+	public Node<K, V> getRoot()
+	{
+		return this.root;
+	}
+
+	/**
+	 * public V search(K k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public V search(K k)
+	{
+		return find(k).value;
+	}
+
+	/**
+	 * searches for the node with key k
+	 * @return the node with key = k, or the external leaf if not found
+	 */
+	private Node<K, V> find(K k) {
+		Node<K, V> curr = root;
+		while(curr != external) {
+			int cmp = k.compareTo(curr.key);
+			if(cmp == 0) {
+				return curr;
+			}
+			curr = cmp > 0 ? curr.right : curr.left;
+		}
+		return curr;
+	}
+
+	/**
+	 * public int insert(K k, V i)
+	 *
+	 * inserts an item with key k and info i to the WAVL tree.
+	 * the tree must remain valid (keep its invariants).
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+	 * returns -1 if an item with key k already exists in the tree.
+	 */
+	public int insert(K k, V i) {
+		Node<K, V> p = null;
+		Node<K, V> curr = root;
+		int cmp = 0;
+		while(curr != external) {
+			cmp = k.compareTo(curr.key);
+			// If item with k already exists:
+			if(cmp == 0) {
+				return -1;
+			}
+			p = curr;
+			curr = cmp > 0 ? curr.right : curr.left;
+		}
+
+		Node<K, V> n = new Node<>(k, i, 0, 1);
+		n.left = external;
+		n.right = external;
+		n.parent = p;
+		if(p == null) {
+			root = n;
+		} else {
+			if(cmp < 0) {
+				p.left = n;
+			} else {
+				p.right = n;
+			}
+			updateSubTreeSizes(p, 1);
+		}
+		size ++;
+		return reBalanceFrom(p, false);
+	}
+
+	/**
+	 * public int delete(K k)
+	 *
+	 * deletes an item with key k from the binary tree, if it is there;
+	 * the tree must remain valid (keep its invariants).
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(K k)
+	{
+		Node<K, V> n = find(k);
+		// If item with k doesn't exists:
+		if(n == external) {
+			return -1;
+		}
+		size --;
+
+		if(isInnerLeaf(n)) {
+			Node<K, V> p = n.parent;
+			if(p == null) {
+				root = external;
+				return 1;
+			}
+			replaceChild(p, n, external);
+			updateSubTreeSizes(p, -1);
+			return reBalanceFrom(p, true);
+		}
+
+		// Finding the one to replace n, same choice as WAVLTree.delete:
+		Node<K, V> swap = n.right != external ? minNode(n.right) : external;
+		if(swap == external || !isInnerLeaf(swap)) {
+			swap = n.left != external ? maxNode(n.left) : swap;
+		}
+
+		// Detaching swap, it has at most one child:
+		Node<K, V> swapParent = swap.parent;
+		Node<K, V> swapChild = swap.left != external ? swap.left : swap.right;
+		replaceChild(swapParent, swap, swapChild);
+		setParent(swapChild, swapParent);
+		updateSubTreeSizes(swapParent, -1);
+
+		// Replacing n with swap:
+		swap.left = n.left;
+		swap.right = n.right;
+		setParent(swap.left, swap);
+		setParent(swap.right, swap);
+		swap.parent = n.parent;
+		swap.rank = n.rank;
+		swap.subTreeSize = n.subTreeSize;
+		replaceChild(n.parent, n, swap);
+
+		// Rebalancing:
+		return reBalanceFrom(swapParent == n ? swap : swapParent, true);
+	}
+
+	/**
+	 * Rebalances the tree from start up to the root,
+	 * same cases as {@link WAVLTree#reBalance(WAVLTree.WAVLNode, boolean)}
+	 * @param start  lowest node whose rank may be invalid, may be null
+	 * @return number of rebalance steps
+	 */
+	private int reBalanceFrom(Node<K, V> start, boolean isDelete) {
+		int counter = 0;
+
+		for(Node<K, V> curr = start; curr != null; curr = curr.parent) {
+			int LeftRank = curr.left.rank;
+			int RightRank = curr.right.rank;
+			int Rank = 1 + Math.max(LeftRank, RightRank);
+
+			// Case 1 - Problem with the left son:
+			if(Rank - LeftRank > 2) {
+				if(curr.right.left.rank > curr.right.right.rank) {
+					doubleRotationLeft(curr);
+					counter += 2;
+				} else {
+					rotateLeft(curr);
+					counter += 1;
+				}
+			}
+
+			// Case 2 - Problem with the right son:
+			else if(Rank - RightRank > 2) {
+				if(curr.left.right.rank > curr.left.left.rank) {
+					doubleRotationRight(curr);
+					counter += 2;
+				} else {
+					rotateRight(curr);
+					counter += 1;
+				}
+			}
+
+			Node<K, V> p = curr.parent;
+			// Stopping conditions for rebalancing after deletes:
+			if(isDelete && legitRank(curr)
+					&& !isInnerLeaf(curr)
+					&& p != null
+					&& legitRank(p)) {
+				return counter;
+			}
+
+			if(isDelete && p != null && !isInnerLeaf(curr)) {
+				int diff = p.rank - 3;
+				int maxChild = Math.max(curr.left.rank, curr.right.rank);
+				int minChild = Math.min(curr.left.rank, curr.right.rank);
+				if(p.rank - minChild >= 5) {
+					curr.rank = 1 + maxChild;
+				} else {
+					curr.rank = 1 + Math.max(diff, maxChild);
+				}
+				counter += 1;
+			} else {
+				int prevRank = curr.rank;
+				updateRank(curr);
+				if(curr.rank != prevRank) {
+					counter++;
+				}
+			}
+		}
+		return counter;
+	}
+
+	/**
+	 * rotating right on node n
+	 * @param n
+	 */
+	private void rotateRight(Node<K, V> n) {
+		int nRank = n.rank;
+		Node<K, V> nParent = n.parent;
+		Node<K, V> nLeft = n.left;
+		Node<K, V> nLeftRight = nLeft.right;
+
+		n.left = nLeftRight;
+		setParent(nLeftRight, n);
+		nLeft.right = n;
+		n.parent = nLeft;
+		nLeft.parent = nParent;
+		n.rank = nRank - 1;
+		nLeft.rank = nRank;
+		replaceChild(nParent, n, nLeft);
+
+		calculateSubTreeSize(n);
+		calculateSubTreeSize(nLeft);
+	}
+
+	/**
+	 * rotating left on node n
+	 * @param n
+	 */
+	private void rotateLeft(Node<K, V> n) {
+		int nRank = n.rank;
+		Node<K, V> nParent = n.parent;
+		Node<K, V> nRight = n.right;
+		Node<K, V> nRightLeft = nRight.left;
+
+		n.right = nRightLeft;
+		setParent(nRightLeft, n);
+		nRight.left = n;
+		n.parent = nRight;
+		nRight.parent = nParent;
+		n.rank = nRank - 1;
+		nRight.rank = nRank;
+		replaceChild(nParent, n, nRight);
+
+		calculateSubTreeSize(n);
+		calculateSubTreeSize(nRight);
+	}
+
+	/**
+	 * perform double rotation right on node n
+	 * @param n
+	 */
+	private void doubleRotationRight(Node<K, V> n) {
+		Node<K, V> nParent = n.parent;
+		Node<K, V> nLeft = n.left;
+		Node<K, V> nLeftRight = nLeft.right; // n's replacement
+
+		// Updating and placing n:
+		n.left = nLeftRight.right;
+		setParent(n.left, n);
+		n.parent = nLeftRight;
+
+		// Updating n's left son:
+		nLeft.right = nLeftRight.left;
+		setParent(nLeft.right, nLeft);
+		nLeft.parent = nLeftRight;
+
+		// Updating n's replacement:
+		nLeftRight.left = nLeft;
+		nLeftRight.right = n;
+		nLeftRight.parent = nParent;
+		replaceChild(nParent, n, nLeftRight);
+
+		updateRank(nLeft);
+		updateRank(n);
+		updateRank(nLeftRight);
+
+		calculateSubTreeSize(n);
+		calculateSubTreeSize(nLeft);
+		calculateSubTreeSize(nLeftRight);
+	}
+
+	/**
+	 * perform double rotation left on node n
+	 * @param n
+	 */
+	private void doubleRotationLeft(Node<K, V> n) {
+		Node<K, V> nParent = n.parent;
+		Node<K, V> nRight = n.right;
+		Node<K, V> nRightLeft = nRight.left; // n's replacement
+
+		// Updating and placing n:
+		n.right = nRightLeft.left;
+		setParent(n.right, n);
+		n.parent = nRightLeft;
+
+		// Updating n's right son:
+		nRight.left = nRightLeft.right;
+		setParent(nRight.left, nRight);
+		nRight.parent = nRightLeft;
+
+		// Updating n's replacement:
+		nRightLeft.right = nRight;
+		nRightLeft.left = n;
+		nRightLeft.parent = nParent;
+		replaceChild(nParent, n, nRightLeft);
+
+		updateRank(nRight);
+		updateRank(n);
+		updateRank(nRightLeft);
+
+		calculateSubTreeSize(n);
+		calculateSubTreeSize(nRight);
+		calculateSubTreeSize(nRightLeft);
+	}
+
+	/**
+	 * public V min()
+	 *
+	 * @return the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public V min()
+	{
+		return minNode(root).value;
+	}
+
+	/**
+	 *
+	 * @return minimal key in tree, null if the tree is empty
+	 */
+	public K minKey() {
+		return minNode(root).key;
+	}
+
+	/**
+	 * public V max()
+	 *
+	 * @return the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public V max()
+	{
+		return maxNode(root).value;
+	}
+
+	/**
+	 *
+	 * @return maximal key in tree, null if the tree is empty
+	 */
+	public K maxKey() {
+		return maxNode(root).key;
+	}
+
+	/**
+	 * public K[] keysToArray(IntFunction<K[]> generator)
+	 *
+	 * @param generator  makes the array to fill, given its length, e.g. Long[]::new
+	 * @return a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public K[] keysToArray(IntFunction<K[]> generator)
+	{
+		K[] arr = generator.apply(size);
+		toArray(root, arr, 0, true);
+		return arr;
+	}
+
+	/**
+	 * public V[] infoToArray(IntFunction<V[]> generator)
+	 *
+	 * @param generator  makes the array to fill, given its length, e.g. String[]::new
+	 * @return an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public V[] infoToArray(IntFunction<V[]> generator)
+	{
+		V[] arr = generator.apply(size);
+		toArray(root, arr, 0, false);
+		return arr;
+	}
+
+	/**
+	 * called by {@link #keysToArray(IntFunction)} and {@link #infoToArray(IntFunction)}
+	 * perform inOrder traversal
+	 * @param index  first free index in arr
+	 * @param keys  true to collect keys, false to collect values
+	 * @return first free index in arr after curr's subtree
+	 */
+	private int toArray(Node<K, V> curr, Object[] arr, int index, boolean keys) {
+		if(curr == external) {
+			return index;
+		}
+		index = toArray(curr.left, arr, index, keys);
+		arr[index++] = keys ? curr.key : curr.value;
+		return toArray(curr.right, arr, index, keys);
+	}
+
+	/**
+	 * public V select(int i)
+	 *
+	 * @return the value of the i'th smallest key (null if i is out of range)
+	 */
+	public V select(int i)
+	{
+		return selectNode(i).value;
+	}
+
+	/**
+	 * public K selectKey(int i)
+	 *
+	 * @return the i'th smallest key (null if i is out of range)
+	 */
+	public K selectKey(int i)
+	{
+		return selectNode(i).key;
+	}
+
+	/**
+	 * descends from the root by subTreeSize, O(log n)
+	 * @param i  1-based position of the wanted node
+	 * @return node holding the i'th smallest key, the external leaf if i is out of range
+	 */
+	private Node<K, V> selectNode(int i) {
+		if(i > size || i <= 0) {
+			return external;
+		}
+		Node<K, V> curr = root;
+		while(curr != external) {
+			int leftSize = curr.left.subTreeSize;
+			if(i == leftSize + 1) {
+				return curr;
+			}
+			if(i <= leftSize) {
+				curr = curr.left;
+			} else {
+				i -= leftSize + 1;
+				curr = curr.right;
+			}
+		}
+		return external;
+	}
+
+	/**
+	 * public int rank(K k)
+	 *
+	 * @return number of keys in the tree that are strictly smaller than k, O(log n)
+	 */
+	public int rank(K k)
+	{
+		return countBelow(k, false);
+	}
+
+	/**
+	 * public int countInRange(K lo, K hi)
+	 *
+	 * @return number of keys k in the tree s.t lo <= k <= hi (0 if lo > hi), O(log n)
+	 */
+	public int countInRange(K lo, K hi)
+	{
+		if(lo.compareTo(hi) > 0) {
+			return 0;
+		}
+		return countBelow(hi, true) - countBelow(lo, false);
+	}
+
+	/**
+	 * called by {@link #rank(Comparable)} and {@link #countInRange(Comparable, Comparable)}
+	 * @param inclusive  true to count keys <= k, false to count keys < k
+	 * @return number of keys below (or equal to) k
+	 */
+	private int countBelow(K k, boolean inclusive) {
+		int count = 0;
+		Node<K, V> curr = root;
+		while(curr != external) {
+			int cmp = curr.key.compareTo(k);
+			if(cmp < 0 || (inclusive && cmp == 0)) {
+				count += curr.left.subTreeSize + 1;
+				curr = curr.right;
+			} else {
+				curr = curr.left;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * puts child where old used to be under p, or as the root if p is null
+	 */
+	private void replaceChild(Node<K, V> p, Node<K, V> old, Node<K, V> child) {
+		if(p == null) {
+			root = child;
+		} else if(p.left == old) {
+			p.left = child;
+		} else {
+			p.right = child;
+		}
+	}
+
+	/**
+	 * setter, ignored on the external leaf which never has a parent
+	 */
+	private void setParent(Node<K, V> n, Node<K, V> p) {
+		if(n != external) {
+			n.parent = p;
+		}
+	}
+
+	/**
+	 * @return left most node in n's subtree, n itself if n is external
+	 */
+	private Node<K, V> minNode(Node<K, V> n) {
+		while(n != external && n.left != external) {
+			n = n.left;
+		}
+		return n;
+	}
+
+	/**
+	 * @return right most node in n's subtree, n itself if n is external
+	 */
+	private Node<K, V> maxNode(Node<K, V> n) {
+		while(n != external && n.right != external) {
+			n = n.right;
+		}
+		return n;
+	}
+
+	/**
+	 * @return true iff n is not external and has no right and left
+	 */
+	private boolean isInnerLeaf(Node<K, V> n) {
+		return n != external && n.left == external && n.right == external;
+	}
+
+	/**
+	 * updates n's rank to 1 + max rank of its sons
+	 */
+	private void updateRank(Node<K, V> n) {
+		n.rank = 1 + Math.max(n.left.rank, n.right.rank);
+	}
+
+	/**
+	 * @return true iff all rank diffs of n are legits
+	 */
+	private boolean legitRank(Node<K, V> n) {
+		if(n == external) {
+			return true;
+		}
+		if(isInnerLeaf(n)) {
+			return n.rank == 0;
+		}
+		if(n.parent != null && n.parent.rank - n.rank > 2) {
+			return false;
+		}
+		return n.rank - Math.min(n.left.rank, n.right.rank) <= 2;
+	}
+
+	/**
+	 * calculates and updates subTreeSize of n only
+	 */
+	private void calculateSubTreeSize(Node<K, V> n) {
+		n.subTreeSize = 1 + n.left.subTreeSize + n.right.subTreeSize;
+	}
+
+	/**
+	 * updates subTreeSize of n and all its ancestors by updateBy
+	 */
+	private void updateSubTreeSizes(Node<K, V> n, int updateBy) {
+		while(n != null) {
+			n.subTreeSize += updateBy;
+			n = n.parent;
+		}
+	}
+
+	/**
+	 * public static class Node
+	 */
+	public static class Node<K, V> {
+		private final K key;
+		private final V value;
+		private Node<K, V> left;
+		private Node<K, V> right;
+		private Node<K, V> parent;
+		private int rank;
+		private int subTreeSize;
+
+		private Node(K key, V value, int rank, int subTreeSize) {
+			this.key = key;
+			this.value = value;
+			this.rank = rank;
+			this.subTreeSize = subTreeSize;
+		}
+
+		/**
+		 * getter
+		 * @return {@link #key}
+		 */
+		public K getKey() {
+			return key;
+		}
+
+		/**
+		 * getter
+		 * @return {@link #value}
+		 */
+		public V getValue() {
+			return value;
+		}
+
+		/**
+		 * getter
+		 * @return {@link #left}
+		 */
+		public Node<K, V> getLeft() {
+			return left;
+		}
+
+		/**
+		 * getter
+		 * @return {@link #right}
+		 */
+		public Node<K, V> getRight() {
+			return right;
+		}
+
+		/**
+		 * getter
+		 * @return {@link #parent}
+		 */
+		public Node<K, V> getParent() {
+			return parent;
+		}
+
+		/**
+		 * getter
+		 * @return {@link #rank}
+		 */
+		public int getRank() {
+			return rank;
+		}
+
+		/**
+		 * getter
+		 * @return {@link #subTreeSize}
+		 */
+		public int getSubtreeSize() {
+			return subTreeSize;
+		}
+
+		/**
+		 * @return true iff this is not the external leaf
+		 */
+		public boolean isInnerNode() {
+			return this != EXTERNAL;
+		}
+	}
+}
@@ -0,0 +1,203 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ *
+ * IntWAVLTree
+ *
+ * A WAVL Tree over int keys with the same API as {@link WAVLTree}, storing its nodes as
+ * int handles into parallel arrays instead of WAVLNode objects, so keys are never boxed.
+ * The keys are kept here, everything else is the {@link ArrayWAVLTree} engine.
+ * Every int is a valid key: operations that have no key to return throw NoSuchElementException.
+ *
+ */
+public class IntWAVLTree<V> extends ArrayWAVLTree<V> {
+	private int[] key;
+
+	/**
+	 * empty constructor  sets default values
+	 */
+	public IntWAVLTree() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * constructor
+	 * @param capacity  number of nodes to reserve room for before growing
+	 */
+	public IntWAVLTree(int capacity) {
+		super(capacity);
+		this.key = new int[capacity()];
+	}
+
+	/**
+	 * constructor
+	 * sets {@link #root} as a node holding (key,value)
+	 * @param key  root's key
+	 * @param value  root's value
+	 */
+	public IntWAVLTree(int key, V value) {
+		this();
+		this.insert(key, value);
+	}
+
+	/**
+	 * public V search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public V search(int k)
+	{
+		return getValue(find(k));
+	}
+
+	/**
+	 * searches for the node with key k
+	 * @param k
+	 * @return the node with key = k, or EXTERNAL if not found
+	 */
+	private int find(int k) {
+		int curr = root;
+		while(curr != EXTERNAL && key[curr] != k) {
+			curr = key[curr] < k ? right[curr] : left[curr];
+		}
+		return curr;
+	}
+
+	/**
+	 * public int insert(int k, V i)
+	 *
+	 * inserts an item with key k and info i to the WAVL tree.
+	 * the tree must remain valid (keep its invariants).
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+	 * returns -1 if an item with key k already exists in the tree.
+	 */
+	public int insert(int k, V i) {
+		int p = EXTERNAL;
+		int curr = root;
+		while(curr != EXTERNAL) {
+			// If item with k already exists:
+			if(key[curr] == k) {
+				return -1;
+			}
+			p = curr;
+			curr = key[curr] < k ? right[curr] : left[curr];
+		}
+
+		int n = allocate(i);
+		key[n] = k;
+		return link(n, p, p != EXTERNAL && k < key[p]);
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item with key k from the binary tree, if it is there;
+	 * the tree must remain valid (keep its invariants).
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(int k)
+	{
+		int n = find(k);
+		// If item with k doesn't exists:
+		if(n == EXTERNAL) {
+			return -1;
+		}
+		return unlink(n);
+	}
+
+	/**
+	 *
+	 * @return minimal key in tree
+	 * @throws NoSuchElementException if the tree is empty
+	 */
+	public int minKey() {
+		return key[minExisting()];
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * @return a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public int[] keysToArray()
+	{
+		int[] arr = new int[size()];
+		int index = 0;
+		for(int curr = minNode(root); curr != EXTERNAL; curr = successor(curr)) {
+			arr[index++] = key[curr];
+		}
+		return arr;
+	}
+
+	/**
+	 * public int selectKey(int i)
+	 *
+	 * @return the i'th smallest key
+	 * @throws NoSuchElementException if i is out of range
+	 */
+	public int selectKey(int i)
+	{
+		return key[selectExisting(i)];
+	}
+
+	/**
+	 * public int rank(int k)
+	 *
+	 * @return number of keys in the tree that are strictly smaller than k, O(log n)
+	 */
+	public int rank(int k)
+	{
+		return countBelow(k, false);
+	}
+
+	/**
+	 * public int countInRange(int lo, int hi)
+	 *
+	 * @return number of keys k in the tree s.t lo <= k <= hi (0 if lo > hi), O(log n)
+	 */
+	public int countInRange(int lo, int hi)
+	{
+		if(lo > hi) {
+			return 0;
+		}
+		return countBelow(hi, true) - countBelow(lo, false);
+	}
+
+	/**
+	 * called by {@link #rank(int)} and {@link #countInRange(int, int)}
+	 * @param k  bound key
+	 * @param inclusive  true to count keys <= k, false to count keys < k
+	 * @return number of keys below (or equal to) k
+	 */
+	private int countBelow(int k, boolean inclusive) {
+		int count = 0;
+		int curr = root;
+		while(curr != EXTERNAL) {
+			if(key[curr] < k || (inclusive && key[curr] == k)) {
+				count += getSubtreeSize(left[curr]) + 1;
+				curr = right[curr];
+			} else {
+				curr = left[curr];
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * getter
+	 * @param n  node handle
+	 * @return n's key
+	 */
+	public int getKey(int n) {
+		return key[n];
+	}
+
+	@Override
+	protected void growKeys(int length) {
+		key = Arrays.copyOf(key, length);
+	}
+}
@@ -0,0 +1,946 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ *
+ * OffHeapWAVLTree
+ *
+ * A WAVL Tree whose nodes and values live outside the Java heap.
+ * Nodes are fixed-size records in direct buffers, addressed by int handles
+ * the same way as in {@link IntWAVLTree}:
+ * key, left, right, parent, subTreeSize (4 bytes each) and value address (8 bytes), 28 bytes per node.
+ * Ranks are not stored: every node keeps the rank differences to its two children in 2 bits each,
+ * packed into the top 4 bits of the value address word. The rebalancing below only ever works on these
+ * differences, which stay within 0..3 even while a violation is being fixed.
+ * A tree holds at most {@link #MAX_SIZE} items, the number of int handles; insert throws beyond that.
+ * Values are stored as length-prefixed UTF-8 in slots of a direct byte region.
+ * Slot sizes are powers of two, and the slot of a deleted value goes on a free-list of its size,
+ * to be reused by the next value of that size, so the region does not grow under insert/delete churn.
+ * Handle 0 is the shared external leaf.
+ * {@link #close()} frees the native memory of all buffers right away instead of leaving it to the GC.
+ *
+ */
+public class OffHeapWAVLTree implements AutoCloseable {
+	private static final int EXTERNAL = 0;
+
+	/**
+	 * the most items a tree can hold: every handle but the external leaf's
+	 */
+	public static final int MAX_SIZE = Integer.MAX_VALUE - 1;
+
+	// Node record layout:
+	private static final int KEY = 0;
+	private static final int LEFT = 4;
+	private static final int RIGHT = 8;
+	private static final int PARENT = 12;
+	private static final int SIZE = 16;
+	private static final int VALUE = 20; // low 60 bits value address, then left and right rank difference
+	private static final int RECORD_SIZE = 28;
+
+	private static final long ADDRESS_MASK = (1L << 60) - 1;
+	private static final long NO_VALUE = ADDRESS_MASK;
+	private static final int MAX_VALUE_CHUNKS = 1 << 28; // chunk index in bits 32..59 of an address
+	private static final int LEFT_DIFF_SHIFT = 60;
+	private static final int RIGHT_DIFF_SHIFT = 62;
+
+	private static final int CHUNK_SHIFT = 12; // records per node chunk
+	private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+	private static final int VALUE_CHUNK_SIZE = 1 << 16;
+	private static final int MIN_SLOT_SHIFT = 4; // room for the free-list link
+	private static final int MAX_SLOT_SHIFT = 30;
+
+	private static final Method INVOKE_CLEANER;
+	private static final Object UNSAFE;
+
+	static {
+		Method invokeCleaner = null;
+		Object unsafe = null;
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = field.get(null);
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// no way to free a direct buffer ourselves, close() leaves them to the GC
+			invokeCleaner = null;
+			unsafe = null;
+		}
+		INVOKE_CLEANER = invokeCleaner;
+		UNSAFE = unsafe;
+	}
+
+	private ArrayList<ByteBuffer> nodes;
+	private ArrayList<ByteBuffer> values;
+	private ByteBuffer valueChunk;
+	private int valueChunkIndex;
+	private int valuePosition;
+	private long[] freeSlots; // free-list head per slot size shift
+
+	private int root;
+	private int size;
+	private int used;
+	private int free;
+
+	/**
+	 * empty constructor  sets default values
+	 */
+	public OffHeapWAVLTree() {
+		this.nodes = new ArrayList<>();
+		this.values = new ArrayList<>();
+		this.valueChunk = null;
+		this.valueChunkIndex = -1;
+		this.valuePosition = 0;
+		this.freeSlots = new long[MAX_SLOT_SHIFT + 1];
+		Arrays.fill(this.freeSlots, NO_VALUE);
+		this.root = EXTERNAL;
+		this.size = 0;
+		this.used = 1;
+		this.free = EXTERNAL;
+		addNodeChunk();
+		setKey(EXTERNAL, -1);
+		setValueAddress(EXTERNAL, NO_VALUE);
+	}
+
+	/**
+	 * frees the native memory of all node and value buffers before returning.
+	 * the tree can not be used after it was closed, closing it again does nothing.
+	 * only if the running JVM offers no way to free a direct buffer (no sun.misc.Unsafe)
+	 * are the buffers just dropped, for the GC to release.
+	 */
+	@Override
+	public void close() {
+		if(this.nodes == null) {
+			return;
+		}
+		for(ByteBuffer chunk : this.nodes) {
+			free(chunk);
+		}
+		for(ByteBuffer chunk : this.values) {
+			free(chunk);
+		}
+		this.nodes = null;
+		this.values = null;
+		this.valueChunk = null;
+		this.root = EXTERNAL;
+		this.size = 0;
+	}
+
+	/**
+	 *
+	 * @return true iff size == 0
+	 */
+	public boolean empty() {
+		return size==0;
+	}
+
+	/**
+	 * public int size()
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public String search(int k)
+	{
+		ensureOpen();
+		return getValue(find(k));
+	}
+
+	/**
+	 * searches for the node with key k
+	 * @param k
+	 * @return the node with key = k, or EXTERNAL if not found
+	 */
+	private int find(int k) {
+		int curr = root;
+		while(curr != EXTERNAL && getKey(curr) != k) {
+			curr = getKey(curr) < k ? getRight(curr) : getLeft(curr);
+		}
+		return curr;
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i to the WAVL tree.
+	 * the tree must remain valid (keep its invariants).
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+	 * returns -1 if an item with key k already exists in the tree.
+	 * @throws IllegalStateException if the tree already holds {@link #MAX_SIZE} items
+	 */
+	public int insert(int k, String i) {
+		ensureOpen();
+		int p = EXTERNAL;
+		int curr = root;
+		while(curr != EXTERNAL) {
+			// If item with k already exists:
+			if(getKey(curr) == k) {
+				return -1;
+			}
+			p = curr;
+			curr = getKey(curr) < k ? getRight(curr) : getLeft(curr);
+		}
+		if(size == MAX_SIZE) {
+			throw new IllegalStateException("an off-heap tree holds at most " + MAX_SIZE + " items");
+		}
+
+		int n = allocate(k, i);
+		setParent(n, p);
+		size ++;
+		if(p == EXTERNAL) {
+			root = n;
+			return 0;
+		}
+		boolean left = k < getKey(p);
+		if(left) {
+			setLeft(p, n);
+		} else {
+			setRight(p, n);
+		}
+		updateSubTreeSizes(p, 1);
+		// n (rank 0) took the place of an external leaf (rank -1):
+		setDiff(p, left, getDiff(p, left) - 1);
+		return reBalanceInsert(n);
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item with key k from the binary tree, if it is there;
+	 * the tree must remain valid (keep its invariants).
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(int k)
+	{
+		ensureOpen();
+		int n = find(k);
+		// If item with k doesn't exists:
+		if(n == EXTERNAL) {
+			return -1;
+		}
+		size --;
+
+		if(isInnerLeaf(n)) {
+			int p = getParent(n);
+			release(n);
+			if(p == EXTERNAL) {
+				root = EXTERNAL;
+				return 1;
+			}
+			boolean left = getLeft(p) == n;
+			replaceChild(p, n, EXTERNAL);
+			updateSubTreeSizes(p, -1);
+			// an external leaf (rank -1) took n's place (rank 0):
+			setDiff(p, left, getDiff(p, left) + 1);
+			return reBalanceDelete(p, left);
+		}
+
+		// Finding the one to replace n, same choice as WAVLTree.delete:
+		int swap = getRight(n) != EXTERNAL ? minNode(getRight(n)) : EXTERNAL;
+		if(swap == EXTERNAL || !isInnerLeaf(swap)) {
+			swap = getLeft(n) != EXTERNAL ? maxNode(getLeft(n)) : swap;
+		}
+
+		// Detaching swap, it has at most one child:
+		int swapParent = getParent(swap);
+		int swapChild = getLeft(swap) != EXTERNAL ? getLeft(swap) : getRight(swap);
+		boolean left = getLeft(swapParent) == swap;
+		replaceChild(swapParent, swap, swapChild);
+		setParent(swapChild, swapParent);
+		updateSubTreeSizes(swapParent, -1);
+
+		// Replacing n with swap, which takes over n's rank differences too:
+		setLeft(swap, getLeft(n));
+		setRight(swap, getRight(n));
+		setParent(getLeft(swap), swap);
+		setParent(getRight(swap), swap);
+		setParent(swap, getParent(n));
+		setSubTreeSize(swap, getSubTreeSize(n));
+		setDiff(swap, true, getDiff(n, true));
+		setDiff(swap, false, getDiff(n, false));
+		replaceChild(getParent(n), n, swap);
+		release(n);
+
+		// swap was a leaf or a unary node of rank 1, its child is one rank lower:
+		int p = swapParent == n ? swap : swapParent;
+		setDiff(p, left, getDiff(p, left) + 1);
+		return reBalanceDelete(p, left);
+	}
+
+	/**
+	 * Rebalances the tree after n was linked in as a new leaf,
+	 * promoting up the path while a 0-child has a 1-child sibling, then rotating at most twice
+	 * @param n  the new leaf, its rank difference already lowered under its parent
+	 * @return number of rebalance steps
+	 */
+	private int reBalanceInsert(int n) {
+		int counter = 0;
+		int p = getParent(n);
+		while(p != EXTERNAL) {
+			boolean left = getLeft(p) == n;
+			if(getDiff(p, left) != 0) {
+				return counter;
+			}
+
+			// Case 1 - promoting p:
+			if(getDiff(p, !left) == 1) {
+				setDiff(p, left, 1);
+				setDiff(p, !left, 2);
+				counter++;
+				int g = getParent(p);
+				if(g != EXTERNAL) {
+					boolean pLeft = getLeft(g) == p;
+					setDiff(g, pLeft, getDiff(g, pLeft) - 1);
+				}
+				n = p;
+				p = g;
+				continue;
+			}
+
+			// n was just promoted, so one of its children is a 1-child and the other a 2-child.
+			// Case 2 - the outer child is the 1-child, n takes p's place and rank:
+			if(getDiff(n, left) == 1) {
+				rotateUp(n);
+				setDiff(n, !left, 1);
+				setDiff(p, left, 1);
+				setDiff(p, !left, 1);
+				return counter + 1;
+			}
+
+			// Case 3 - the inner child y is the 1-child, y takes p's place and rank:
+			int y = getChild(n, !left);
+			int yOuter = getDiff(y, left);
+			int yInner = getDiff(y, !left);
+			rotateUp(y);
+			rotateUp(y);
+			setDiff(y, true, 1);
+			setDiff(y, false, 1);
+			setDiff(n, left, 1);
+			setDiff(n, !left, yOuter);
+			setDiff(p, left, yInner);
+			setDiff(p, !left, 1);
+			return counter + 2;
+		}
+		return counter;
+	}
+
+	/**
+	 * Rebalances the tree after the rank difference of p's child on the given side grew by one,
+	 * demoting up the path, then rotating at most twice
+	 * @return number of rebalance steps
+	 */
+	private int reBalanceDelete(int p, boolean left) {
+		int counter = 0;
+		while(p != EXTERNAL) {
+			int diff = getDiff(p, left);
+			int siblingDiff = getDiff(p, !left);
+
+			// Case 1 - a 2,2 leaf, demoting it:
+			if(diff == 2 && siblingDiff == 2 && isInnerLeaf(p)) {
+				setDiff(p, left, 1);
+				setDiff(p, !left, 1);
+			}
+
+			// Case 2 - a 3-child with a 2-child sibling, demoting p:
+			else if(diff == 3 && siblingDiff == 2) {
+				setDiff(p, left, 2);
+				setDiff(p, !left, 1);
+			}
+
+			else if(diff == 3) {
+				int s = getChild(p, !left);
+				int sOuter = getDiff(s, !left);
+				int sInner = getDiff(s, left);
+
+				// Case 3 - the sibling is 2,2, demoting both p and the sibling:
+				if(sOuter == 2 && sInner == 2) {
+					setDiff(p, left, 2);
+					setDiff(s, true, 1);
+					setDiff(s, false, 1);
+				}
+
+				// Case 4 - the sibling's outer child is a 1-child, the sibling takes p's place and rank:
+				else if(sOuter == 1) {
+					rotateUp(s);
+					setDiff(s, !left, 2);
+					if(isInnerLeaf(p)) {
+						// p would be a 2,2 leaf of rank 2 otherwise:
+						setDiff(s, left, 2);
+						setDiff(p, left, 1);
+						setDiff(p, !left, 1);
+					} else {
+						setDiff(s, left, 1);
+						setDiff(p, left, 2);
+						setDiff(p, !left, sInner);
+					}
+					return counter + 1;
+				}
+
+				// Case 5 - the sibling's inner child y is the 1-child, y takes p's place and rank:
+				else {
+					int y = getChild(s, left);
+					int yNear = getDiff(y, left);
+					int yFar = getDiff(y, !left);
+					rotateUp(y);
+					rotateUp(y);
+					setDiff(y, true, 2);
+					setDiff(y, false, 2);
+					setDiff(p, left, 1);
+					setDiff(p, !left, yNear);
+					setDiff(s, left, yFar);
+					setDiff(s, !left, 1);
+					return counter + 2;
+				}
+			}
+
+			else {
+				return counter;
+			}
+
+			// p lost a rank, which grows its own rank difference:
+			counter++;
+			int g = getParent(p);
+			if(g != EXTERNAL) {
+				left = getLeft(g) == p;
+				setDiff(g, left, getDiff(g, left) + 1);
+			}
+			p = g;
+		}
+		return counter;
+	}
+
+	/**
+	 * rotates n above its parent, keeping the subtree sizes.
+	 * the rank differences of both nodes are left for the caller to set
+	 * @param n
+	 */
+	private void rotateUp(int n) {
+		int p = getParent(n);
+		int g = getParent(p);
+		if(getLeft(p) == n) {
+			int inner = getRight(n);
+			setLeft(p, inner);
+			setParent(inner, p);
+			setRight(n, p);
+		} else {
+			int inner = getLeft(n);
+			setRight(p, inner);
+			setParent(inner, p);
+			setLeft(n, p);
+		}
+		setParent(p, n);
+		setParent(n, g);
+		replaceChild(g, p, n);
+
+		calculateSubTreeSize(p);
+		calculateSubTreeSize(n);
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * @return the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String min()
+	{
+		ensureOpen();
+		return getValue(minNode(root));
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * @return the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String max()
+	{
+		ensureOpen();
+		return getValue(maxNode(root));
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * @return a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public int[] keysToArray()
+	{
+		ensureOpen();
+		int[] arr = new int[size];
+		int index = 0;
+		for(int curr = minNode(root); curr != EXTERNAL; curr = successor(curr)) {
+			arr[index++] = getKey(curr);
+		}
+		return arr;
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * @return an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray()
+	{
+		ensureOpen();
+		String[] arr = new String[size];
+		int index = 0;
+		for(int curr = minNode(root); curr != EXTERNAL; curr = successor(curr)) {
+			arr[index++] = getValue(curr);
+		}
+		return arr;
+	}
+
+	/**
+	 * public String select(int i)
+	 *
+	 * @return the value of the i'th smallest key (null if i is out of range)
+	 */
+	public String select(int i)
+	{
+		ensureOpen();
+		return getValue(selectNode(i));
+	}
+
+	/**
+	 * public Integer selectKey(int i)
+	 *
+	 * @return the i'th smallest key (return null if i is out of range)
+	 */
+	public Integer selectKey(int i)
+	{
+		ensureOpen();
+		int n = selectNode(i);
+		return n == EXTERNAL ? null : Integer.valueOf(getKey(n));
+	}
+
+	/**
+	 * descends from the root by subTreeSize, O(log n)
+	 * @param i  1-based position of the wanted node
+	 * @return node holding the i'th smallest key, EXTERNAL if i is out of range
+	 */
+	private int selectNode(int i) {
+		if(i > size || i <= 0) {
+			return EXTERNAL;
+		}
+		int curr = root;
+		while(curr != EXTERNAL) {
+			int leftSize = getSubTreeSize(getLeft(curr));
+			if(i == leftSize + 1) {
+				return curr;
+			}
+			if(i <= leftSize) {
+				curr = getLeft(curr);
+			} else {
+				i -= leftSize + 1;
+				curr = getRight(curr);
+			}
+		}
+		return EXTERNAL;
+	}
+
+	/**
+	 * @return n's in-order successor, EXTERNAL if n holds the maximal key
+	 */
+	private int successor(int n) {
+		if(getRight(n) != EXTERNAL) {
+			return minNode(getRight(n));
+		}
+		int p = getParent(n);
+		while(p != EXTERNAL && getRight(p) == n) {
+			n = p;
+			p = getParent(n);
+		}
+		return p;
+	}
+
+	/**
+	 * takes a handle from the free-list, or a fresh one (adding a node chunk if needed)
+	 * @return handle of a new inner leaf with key k and value i
+	 */
+	private int allocate(int k, String i) {
+		long address = storeValue(i);
+		int n = free;
+		if(n != EXTERNAL) {
+			free = getLeft(n);
+		} else {
+			if((used >>> CHUNK_SHIFT) == nodes.size()) {
+				addNodeChunk();
+			}
+			n = used++;
+		}
+		setKey(n, k);
+		setLeft(n, EXTERNAL);
+		setRight(n, EXTERNAL);
+		setParent(n, EXTERNAL);
+		// a leaf, rank 0 over two external leaves:
+		setSubTreeSize(n, 1);
+		setValueWord(n, address | 1L << LEFT_DIFF_SHIFT | 1L << RIGHT_DIFF_SHIFT);
+		return n;
+	}
+
+	/**
+	 * returns n to the free-list, chained through the left field
+	 * @param n  handle of a node already unlinked from the tree
+	 */
+	private void release(int n) {
+		releaseValue(getValueAddress(n));
+		setValueAddress(n, NO_VALUE);
+		setLeft(n, free);
+		free = n;
+	}
+
+	/**
+	 * adds room for another 2^CHUNK_SHIFT node records
+	 */
+	private void addNodeChunk() {
+		nodes.add(ByteBuffer.allocateDirect(RECORD_SIZE << CHUNK_SHIFT).order(ByteOrder.nativeOrder()));
+	}
+
+	/**
+	 * writes v to a free slot of its size, carving a new slot if there is none
+	 * @return address of v (chunk index in bits 32..59, offset in the low 32 bits), NO_VALUE for null
+	 * @throws IllegalArgumentException if v takes more than 2^30 bytes
+	 */
+	private long storeValue(String v) {
+		if(v == null) {
+			return NO_VALUE;
+		}
+		byte[] bytes = v.getBytes(StandardCharsets.UTF_8);
+		int shift = slotShift(4 + bytes.length);
+		long address = freeSlots[shift];
+		if(address != NO_VALUE) {
+			freeSlots[shift] = valueChunk(address).getLong((int) address);
+		} else {
+			address = carveSlot(shift);
+		}
+		ByteBuffer chunk = valueChunk(address);
+		chunk.putInt((int) address, bytes.length);
+		chunk.put((int) address + 4, bytes);
+		return address;
+	}
+
+	/**
+	 * puts the slot at address on the free-list of its size, the link taking the place of the length
+	 */
+	private void releaseValue(long address) {
+		if(address == NO_VALUE) {
+			return;
+		}
+		ByteBuffer chunk = valueChunk(address);
+		int shift = slotShift(4 + chunk.getInt((int) address));
+		chunk.putLong((int) address, freeSlots[shift]);
+		freeSlots[shift] = address;
+	}
+
+	/**
+	 * takes a new slot of 2^shift bytes from the end of the current value chunk.
+	 * a slot larger than a chunk gets a chunk of its own, and when the current chunk is too full
+	 * its rest is cut into free slots before a new chunk is started
+	 * @return address of the slot
+	 */
+	private long carveSlot(int shift) {
+		int slot = 1 << shift;
+		if(slot > VALUE_CHUNK_SIZE) {
+			return (long) addValueChunk(slot) << 32;
+		}
+		if(valueChunk == null || valuePosition + slot > VALUE_CHUNK_SIZE) {
+			while(valueChunk != null && valuePosition < VALUE_CHUNK_SIZE) {
+				int piece = Integer.highestOneBit(VALUE_CHUNK_SIZE - valuePosition);
+				long address = ((long) valueChunkIndex << 32) | valuePosition;
+				valueChunk.putLong(valuePosition, freeSlots[Integer.numberOfTrailingZeros(piece)]);
+				freeSlots[Integer.numberOfTrailingZeros(piece)] = address;
+				valuePosition += piece;
+			}
+			valueChunkIndex = addValueChunk(VALUE_CHUNK_SIZE);
+			valueChunk = values.get(valueChunkIndex);
+			valuePosition = 0;
+		}
+		long address = ((long) valueChunkIndex << 32) | valuePosition;
+		valuePosition += slot;
+		return address;
+	}
+
+	/**
+	 * @return index of a new value chunk of capacity bytes
+	 * @throws IllegalStateException if there are as many value chunks as an address can tell apart
+	 */
+	private int addValueChunk(int capacity) {
+		if(values.size() == MAX_VALUE_CHUNKS) {
+			throw new IllegalStateException("an off-heap tree holds at most " + MAX_VALUE_CHUNKS + " value chunks");
+		}
+		values.add(ByteBuffer.allocateDirect(capacity));
+		return values.size() - 1;
+	}
+
+	/**
+	 * @return shift of the smallest slot size that holds needed bytes
+	 */
+	private static int slotShift(int needed) {
+		if(needed > 1 << MAX_SLOT_SHIFT || needed < 0) {
+			throw new IllegalArgumentException("an off-heap value takes at most " + (1 << MAX_SLOT_SHIFT) + " bytes");
+		}
+		return Math.max(MIN_SLOT_SHIFT, 32 - Integer.numberOfLeadingZeros(needed - 1));
+	}
+
+	private ByteBuffer valueChunk(long address) {
+		return values.get((int) (address >>> 32));
+	}
+
+	/**
+	 * frees the native memory of a direct buffer now, if the JVM lets us
+	 */
+	private static void free(ByteBuffer buffer) {
+		if(INVOKE_CLEANER == null) {
+			return;
+		}
+		try {
+			INVOKE_CLEANER.invoke(UNSAFE, buffer);
+		} catch (ReflectiveOperationException e) {
+			// left to the GC
+		}
+	}
+
+	/**
+	 * getter
+	 * @return value of node n decoded from the value region, null for EXTERNAL
+	 */
+	private String getValue(int n) {
+		long address = getValueAddress(n);
+		if(address == NO_VALUE) {
+			return null;
+		}
+		ByteBuffer chunk = valueChunk(address);
+		int offset = (int) address;
+		byte[] bytes = new byte[chunk.getInt(offset)];
+		chunk.get(offset + 4, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @throws IllegalStateException if the tree was closed
+	 */
+	private void ensureOpen() {
+		if(nodes == null) {
+			throw new IllegalStateException("tree is closed");
+		}
+	}
+
+	/**
+	 * puts child where old used to be under p, or as the root if p is EXTERNAL
+	 */
+	private void replaceChild(int p, int old, int child) {
+		if(p == EXTERNAL) {
+			root = child;
+		} else if(getLeft(p) == old) {
+			setLeft(p, child);
+		} else {
+			setRight(p, child);
+		}
+	}
+
+	/**
+	 * @return left most node in n's subtree, n itself if n is EXTERNAL
+	 */
+	private int minNode(int n) {
+		while(getLeft(n) != EXTERNAL) {
+			n = getLeft(n);
+		}
+		return n;
+	}
+
+	/**
+	 * @return right most node in n's subtree, n itself if n is EXTERNAL
+	 */
+	private int maxNode(int n) {
+		while(getRight(n) != EXTERNAL) {
+			n = getRight(n);
+		}
+		return n;
+	}
+
+	/**
+	 * @return true iff n is not external and has no right and left
+	 */
+	private boolean isInnerLeaf(int n) {
+		return n != EXTERNAL && getLeft(n) == EXTERNAL && getRight(n) == EXTERNAL;
+	}
+
+	/**
+	 * @return the child of n on the given side
+	 */
+	private int getChild(int n, boolean left) {
+		return left ? getLeft(n) : getRight(n);
+	}
+
+	/**
+	 * @return true iff all rank diffs of n are legits: 1 or 2, and 1,1 for a leaf
+	 */
+	private boolean legitRank(int n) {
+		int leftDiff = getDiff(n, true);
+		int rightDiff = getDiff(n, false);
+		if(isInnerLeaf(n)) {
+			return leftDiff == 1 && rightDiff == 1;
+		}
+		return leftDiff >= 1 && leftDiff <= 2 && rightDiff >= 1 && rightDiff <= 2;
+	}
+
+	/**
+	 * public boolean isValid()
+	 *
+	 * checks the WAVL invariants on the stored rank differences,
+	 * the subtree sizes, the parent links and the key order, O(n)
+	 * @return true iff the tree is a valid WAVL tree
+	 */
+	public boolean isValid() {
+		ensureOpen();
+		return getParent(root) == EXTERNAL && rankOf(root, Long.MIN_VALUE, Long.MAX_VALUE) != Integer.MIN_VALUE;
+	}
+
+	/**
+	 * called by {@link #isValid()}
+	 * @return the rank of n computed from its rank differences, Integer.MIN_VALUE if n's subtree is not valid
+	 */
+	private int rankOf(int n, long lo, long hi) {
+		if(n == EXTERNAL) {
+			return -1;
+		}
+		int l = getLeft(n);
+		int r = getRight(n);
+		if(getKey(n) <= lo || getKey(n) >= hi || !legitRank(n)
+				|| (l != EXTERNAL && getParent(l) != n) || (r != EXTERNAL && getParent(r) != n)
+				|| getSubTreeSize(n) != 1 + getSubTreeSize(l) + getSubTreeSize(r)) {
+			return Integer.MIN_VALUE;
+		}
+		int leftRank = rankOf(l, lo, getKey(n));
+		int rightRank = rankOf(r, getKey(n), hi);
+		if(leftRank == Integer.MIN_VALUE || rightRank == Integer.MIN_VALUE
+				|| leftRank + getDiff(n, true) != rightRank + getDiff(n, false)) {
+			return Integer.MIN_VALUE;
+		}
+		return leftRank + getDiff(n, true);
+	}
+
+	/**
+	 * calculates and updates subTreeSize of n only
+	 */
+	private void calculateSubTreeSize(int n) {
+		setSubTreeSize(n, 1 + getSubTreeSize(getLeft(n)) + getSubTreeSize(getRight(n)));
+	}
+
+	/**
+	 * updates subTreeSize of n and all its ancestors by updateBy
+	 */
+	private void updateSubTreeSizes(int n, int updateBy) {
+		while(n != EXTERNAL) {
+			setSubTreeSize(n, getSubTreeSize(n) + updateBy);
+			n = getParent(n);
+		}
+	}
+
+	// Record accessors:
+
+	private ByteBuffer chunk(int n) {
+		return nodes.get(n >>> CHUNK_SHIFT);
+	}
+
+	private static int offset(int n, int field) {
+		return (n & CHUNK_MASK) * RECORD_SIZE + field;
+	}
+
+	private int getKey(int n) {
+		return chunk(n).getInt(offset(n, KEY));
+	}
+
+	private void setKey(int n, int k) {
+		chunk(n).putInt(offset(n, KEY), k);
+	}
+
+	private int getLeft(int n) {
+		return chunk(n).getInt(offset(n, LEFT));
+	}
+
+	private void setLeft(int n, int l) {
+		chunk(n).putInt(offset(n, LEFT), l);
+	}
+
+	private int getRight(int n) {
+		return chunk(n).getInt(offset(n, RIGHT));
+	}
+
+	private void setRight(int n, int r) {
+		chunk(n).putInt(offset(n, RIGHT), r);
+	}
+
+	private int getParent(int n) {
+		return chunk(n).getInt(offset(n, PARENT));
+	}
+
+	/**
+	 * setter, ignored on the external leaf which never has a parent
+	 */
+	private void setParent(int n, int p) {
+		if(n != EXTERNAL) {
+			chunk(n).putInt(offset(n, PARENT), p);
+		}
+	}
+
+	private int getSubTreeSize(int n) {
+		return chunk(n).getInt(offset(n, SIZE));
+	}
+
+	private void setSubTreeSize(int n, int s) {
+		chunk(n).putInt(offset(n, SIZE), s);
+	}
+
+	private long getValueWord(int n) {
+		return chunk(n).getLong(offset(n, VALUE));
+	}
+
+	private void setValueWord(int n, long word) {
+		chunk(n).putLong(offset(n, VALUE), word);
+	}
+
+	/**
+	 * getter
+	 * @return rank(n) - rank(child of n on the given side), 0..3
+	 */
+	private int getDiff(int n, boolean left) {
+		return (int) (getValueWord(n) >>> (left ? LEFT_DIFF_SHIFT : RIGHT_DIFF_SHIFT)) & 3;
+	}
+
+	private void setDiff(int n, boolean left, int diff) {
+		int shift = left ? LEFT_DIFF_SHIFT : RIGHT_DIFF_SHIFT;
+		setValueWord(n, (getValueWord(n) & ~(3L << shift)) | (long) diff << shift);
+	}
+
+	private long getValueAddress(int n) {
+		return getValueWord(n) & ADDRESS_MASK;
+	}
+
+	/**
+	 * setter, keeps n's rank differences
+	 */
+	private void setValueAddress(int n, long address) {
+		setValueWord(n, (getValueWord(n) & ~ADDRESS_MASK) | address);
+	}
+}
@@ -0,0 +1,585 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ *
+ * PersistentWAVLTree
+ *
+ * A WAVL Tree of immutable nodes. insert and delete copy only the nodes on the search path
+ * (and the ones a rotation touches) and leave the old nodes untouched, so every earlier version
+ * stays readable and shares all other nodes with the newer ones.
+ * {@link #snapshot()} is O(1).
+ * Snapshot files use the format of {@link WAVLTree#writeSnapshot(Path)}, so either tree can open the other's.
+ *
+ */
+public class PersistentWAVLTree {
+	/**
+	 * the single external leaf shared by every version: rank -1, subTreeSize 0
+	 */
+	private static final Node EXTERNAL = new Node();
+
+	private Node root;
+	private int rebalanceCount;
+
+	/**
+	 * empty constructor  sets default values
+	 */
+	public PersistentWAVLTree() {
+		this.root = EXTERNAL;
+	}
+
+	private PersistentWAVLTree(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * public PersistentWAVLTree snapshot()
+	 *
+	 * @return a tree holding the current items, unaffected by later changes to this tree
+	 * (and not affecting it when changed itself). O(1)
+	 */
+	public PersistentWAVLTree snapshot() {
+		return new PersistentWAVLTree(this.root);
+	}
+
+	/**
+	 * public static PersistentWAVLTree fromSorted(PrimitiveIterator.OfInt keys, Iterator<String> values, int n)
+	 *
+	 * builds a tree from the first n items of two parallel streams, in O(n),
+	 * the same way as {@link WAVLTree#fromSorted(PrimitiveIterator.OfInt, Iterator, int)}
+	 * @param keys  strictly increasing keys
+	 * @param values  the value of each key, in the same order
+	 * @param n  number of items to take from each stream
+	 * @throws IllegalArgumentException if the keys are not strictly increasing
+	 */
+	public static PersistentWAVLTree fromSorted(PrimitiveIterator.OfInt keys, Iterator<String> values, int n) {
+		return new PersistentWAVLTree(new SortedBuilder(keys, values).build(n));
+	}
+
+	/**
+	 * called by {@link #fromSorted(PrimitiveIterator.OfInt, Iterator, int)}
+	 */
+	private static class SortedBuilder {
+		private final PrimitiveIterator.OfInt keys;
+		private final Iterator<String> values;
+		private boolean hasLast;
+		private int lastKey;
+
+		private SortedBuilder(PrimitiveIterator.OfInt keys, Iterator<String> values) {
+			this.keys = keys;
+			this.values = values;
+			this.hasLast = false;
+		}
+
+		/**
+		 * builds a subtree of the next n items, left half first.
+		 * the halves differ by at most one item, so their heights differ by at most one
+		 * and ranking every node by its height gives rank differences of 1 or 2
+		 */
+		private Node build(int n) {
+			if(n == 0) {
+				return EXTERNAL;
+			}
+			int leftSize = (n - 1) / 2;
+			Node left = build(leftSize);
+
+			int key = this.keys.nextInt();
+			if(this.hasLast && key <= this.lastKey) {
+				throw new IllegalArgumentException("keys are not strictly increasing at " + key);
+			}
+			this.hasLast = true;
+			this.lastKey = key;
+			String value = this.values.next();
+
+			Node right = build(n - 1 - leftSize);
+			return new Node(key, value, left, right, Math.max(left.rank, right.rank) + 1);
+		}
+	}
+
+	/**
+	 * public void writeSnapshot(Path path)
+	 *
+	 * writes all items of this version to path, see {@link WAVLTree#writeSnapshot(Path)}. O(n)
+	 * the version is immutable, so changes made to the tree meanwhile (from another thread
+	 * that holds an older or newer {@link #snapshot()}) do not affect what is written.
+	 */
+	public void writeSnapshot(Path path) throws IOException {
+		Node root = this.root;
+		InOrder keys = new InOrder(root);
+		InOrder values = new InOrder(root);
+		WAVLSnapshot.write(path, root.subTreeSize, new PrimitiveIterator.OfInt() {
+			public boolean hasNext() {
+				return keys.hasNext();
+			}
+			public int nextInt() {
+				return keys.next().key;
+			}
+		}, new Iterator<String>() {
+			public boolean hasNext() {
+				return values.hasNext();
+			}
+			public String next() {
+				return values.next().value;
+			}
+		});
+	}
+
+	/**
+	 * public static PersistentWAVLTree openSnapshot(Path path)
+	 *
+	 * reads a file written by {@link #writeSnapshot(Path)} or {@link WAVLTree#writeSnapshot(Path)}, O(n)
+	 * @throws IOException if the file can not be read, or is not a valid snapshot
+	 */
+	public static PersistentWAVLTree openSnapshot(Path path) throws IOException {
+		return WAVLSnapshot.read(path, PersistentWAVLTree::fromSorted);
+	}
+
+	/**
+	 * walks the nodes under a root in key order, keeping the path to the next one on a stack
+	 */
+	private static class InOrder implements Iterator<Node> {
+		private final ArrayDeque<Node> path;
+
+		private InOrder(Node root) {
+			this.path = new ArrayDeque<>();
+			pushLeft(root);
+		}
+
+		private void pushLeft(Node n) {
+			for(; n != EXTERNAL; n = n.left) {
+				this.path.push(n);
+			}
+		}
+
+		public boolean hasNext() {
+			return !this.path.isEmpty();
+		}
+
+		public Node next() {
+			if(this.path.isEmpty()) {
+				throw new NoSuchElementException();
+			}
+			Node n = this.path.pop();
+			pushLeft(n.right);
+			return n;
+		}
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 */
+	public boolean empty() {
+		return this.root == EXTERNAL;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size() {
+		return this.root.subTreeSize;
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public String search(int k) {
+		Node node = find(k);
+		return node == null ? null : node.value;
+	}
+
+	/**
+	 * looks k up by key, so an item whose value is null is found too
+	 * @return the node with key k, null if there is none
+	 */
+	private Node find(int k) {
+		Node curr = this.root;
+		while(curr != EXTERNAL) {
+			if(curr.key == k) {
+				return curr;
+			}
+			curr = k < curr.key ? curr.left : curr.right;
+		}
+		return null;
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i to the tree, copying the search path.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+	 * returns -1 if an item with key k already exists in the tree.
+	 */
+	public int insert(int k, String i) {
+		if(find(k) != null) {
+			return -1;
+		}
+		this.rebalanceCount = 0;
+		this.root = insert(this.root, k, i);
+		return this.rebalanceCount;
+	}
+
+	private Node insert(Node n, int k, String i) {
+		if(n == EXTERNAL) {
+			return new Node(k, i, EXTERNAL, EXTERNAL, 0);
+		}
+		if(k < n.key) {
+			return insertFixLeft(n.withLeft(insert(n.left, k, i)));
+		}
+		return insertFixRight(n.withRight(insert(n.right, k, i)));
+	}
+
+	/**
+	 * n's left child may have become a 0-child: promote n, or rotate if its right child is a 2-child
+	 */
+	private Node insertFixLeft(Node n) {
+		Node l = n.left;
+		if(l.rank != n.rank) {
+			return n;
+		}
+		this.rebalanceCount++;
+		if(n.rank - n.right.rank == 1) {
+			return n.withRank(n.rank + 1);
+		}
+		if(l.rank - l.left.rank == 1) {
+			Node demoted = new Node(n.key, n.value, l.right, n.right, n.rank - 1);
+			return new Node(l.key, l.value, l.left, demoted, n.rank);
+		}
+		Node y = l.right;
+		Node newLeft = new Node(l.key, l.value, l.left, y.left, n.rank - 1);
+		Node newRight = new Node(n.key, n.value, y.right, n.right, n.rank - 1);
+		return new Node(y.key, y.value, newLeft, newRight, n.rank);
+	}
+
+	/**
+	 * symmetric to {@link #insertFixLeft(Node)}
+	 */
+	private Node insertFixRight(Node n) {
+		Node r = n.right;
+		if(r.rank != n.rank) {
+			return n;
+		}
+		this.rebalanceCount++;
+		if(n.rank - n.left.rank == 1) {
+			return n.withRank(n.rank + 1);
+		}
+		if(r.rank - r.right.rank == 1) {
+			Node demoted = new Node(n.key, n.value, n.left, r.left, n.rank - 1);
+			return new Node(r.key, r.value, demoted, r.right, n.rank);
+		}
+		Node y = r.left;
+		Node newLeft = new Node(n.key, n.value, n.left, y.left, n.rank - 1);
+		Node newRight = new Node(r.key, r.value, y.right, r.right, n.rank - 1);
+		return new Node(y.key, y.value, newLeft, newRight, n.rank);
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item with key k from the tree if it exists, copying the search path.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(int k) {
+		if(find(k) == null) {
+			return -1;
+		}
+		this.rebalanceCount = 0;
+		this.root = delete(this.root, k);
+		return this.rebalanceCount;
+	}
+
+	private Node delete(Node n, int k) {
+		if(k < n.key) {
+			return deleteFixLeft(n.withLeft(delete(n.left, k)));
+		}
+		if(k > n.key) {
+			return deleteFixRight(n.withRight(delete(n.right, k)));
+		}
+		if(n.left == EXTERNAL) {
+			return n.right;
+		}
+		if(n.right == EXTERNAL) {
+			return n.left;
+		}
+		Node successor = n.right;
+		while(successor.left != EXTERNAL) {
+			successor = successor.left;
+		}
+		Node replaced = new Node(successor.key, successor.value, n.left, delete(n.right, successor.key), n.rank);
+		return deleteFixRight(replaced);
+	}
+
+	/**
+	 * n's left subtree lost a rank: demote a 2,2 leaf, demote n (and its sibling) on a 3-child, or rotate
+	 */
+	private Node deleteFixLeft(Node n) {
+		if(n.left == EXTERNAL && n.right == EXTERNAL && n.rank > 0) {
+			this.rebalanceCount++;
+			return n.withRank(0);
+		}
+		if(n.rank - n.left.rank < 3) {
+			return n;
+		}
+		this.rebalanceCount++;
+		Node y = n.right;
+		if(n.rank - y.rank == 2) {
+			return n.withRank(n.rank - 1);
+		}
+		if(y.rank - y.left.rank == 2 && y.rank - y.right.rank == 2) {
+			return new Node(n.key, n.value, n.left, y.withRank(y.rank - 1), n.rank - 1);
+		}
+		if(y.rank - y.right.rank == 1) {
+			Node x = new Node(n.key, n.value, n.left, y.left, n.rank - 1);
+			if(x.left == EXTERNAL && x.right == EXTERNAL) {
+				x = x.withRank(0);
+			}
+			return new Node(y.key, y.value, x, y.right, n.rank);
+		}
+		Node w = y.left;
+		Node newLeft = new Node(n.key, n.value, n.left, w.left, n.rank - 2);
+		Node newRight = new Node(y.key, y.value, w.right, y.right, n.rank - 2);
+		return new Node(w.key, w.value, newLeft, newRight, n.rank);
+	}
+
+	/**
+	 * symmetric to {@link #deleteFixLeft(Node)}
+	 */
+	private Node deleteFixRight(Node n) {
+		if(n.left == EXTERNAL && n.right == EXTERNAL && n.rank > 0) {
+			this.rebalanceCount++;
+			return n.withRank(0);
+		}
+		if(n.rank - n.right.rank < 3) {
+			return n;
+		}
+		this.rebalanceCount++;
+		Node y = n.left;
+		if(n.rank - y.rank == 2) {
+			return n.withRank(n.rank - 1);
+		}
+		if(y.rank - y.left.rank == 2 && y.rank - y.right.rank == 2) {
+			return new Node(n.key, n.value, y.withRank(y.rank - 1), n.right, n.rank - 1);
+		}
+		if(y.rank - y.left.rank == 1) {
+			Node x = new Node(n.key, n.value, y.right, n.right, n.rank - 1);
+			if(x.left == EXTERNAL && x.right == EXTERNAL) {
+				x = x.withRank(0);
+			}
+			return new Node(y.key, y.value, y.left, x, n.rank);
+		}
+		Node w = y.right;
+		Node newLeft = new Node(y.key, y.value, y.left, w.left, n.rank - 2);
+		Node newRight = new Node(n.key, n.value, w.right, n.right, n.rank - 2);
+		return new Node(w.key, w.value, newLeft, newRight, n.rank);
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String min() {
+		return empty() ? null : first().value;
+	}
+
+	/**
+	 * public Integer minKey()
+	 *
+	 * @return the smallest key in the tree, null if the tree is empty
+	 */
+	public Integer minKey() {
+		return empty() ? null : Integer.valueOf(first().key);
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String max() {
+		if(empty()) {
+			return null;
+		}
+		Node curr = this.root;
+		while(curr.right != EXTERNAL) {
+			curr = curr.right;
+		}
+		return curr.value;
+	}
+
+	private Node first() {
+		Node curr = this.root;
+		while(curr.left != EXTERNAL) {
+			curr = curr.left;
+		}
+		return curr;
+	}
+
+	/**
+	 * public String select(int i)
+	 *
+	 * @return the info of the i'th smallest key (1 based), null if i is out of range. O(log n)
+	 */
+	public String select(int i) {
+		Node node = selectNode(i);
+		return node == null ? null : node.value;
+	}
+
+	/**
+	 * public Integer selectKey(int i)
+	 *
+	 * @return the i'th smallest key (1 based), null if i is out of range. O(log n)
+	 */
+	public Integer selectKey(int i) {
+		Node node = selectNode(i);
+		return node == null ? null : Integer.valueOf(node.key);
+	}
+
+	private Node selectNode(int i) {
+		if(i < 1 || i > size()) {
+			return null;
+		}
+		Node curr = this.root;
+		while(i != curr.left.subTreeSize + 1) {
+			if(i <= curr.left.subTreeSize) {
+				curr = curr.left;
+			} else {
+				i -= curr.left.subTreeSize + 1;
+				curr = curr.right;
+			}
+		}
+		return curr;
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public int[] keysToArray() {
+		int[] arr = new int[size()];
+		keysToArray(this.root, arr, 0);
+		return arr;
+	}
+
+	private static int keysToArray(Node n, int[] arr, int index) {
+		if(n == EXTERNAL) {
+			return index;
+		}
+		index = keysToArray(n.left, arr, index);
+		arr[index++] = n.key;
+		return keysToArray(n.right, arr, index);
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray() {
+		String[] arr = new String[size()];
+		infoToArray(this.root, arr, 0);
+		return arr;
+	}
+
+	private static int infoToArray(Node n, String[] arr, int index) {
+		if(n == EXTERNAL) {
+			return index;
+		}
+		index = infoToArray(n.left, arr, index);
+		arr[index++] = n.value;
+		return infoToArray(n.right, arr, index);
+	}
+
+	/**
+	 * public int getRank()
+	 *
+	 * @return the rank of the root, -1 if the tree is empty
+	 */
+	public int getRank() {
+		return this.root.rank;
+	}
+
+	/**
+	 * public boolean isValid()
+	 *
+	 * @return true if the ranks, subtree sizes and key order of the current version satisfy the WAVL rules
+	 */
+	public boolean isValid() {
+		return isValid(this.root, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	private static boolean isValid(Node n, long lo, long hi) {
+		if(n == EXTERNAL) {
+			return true;
+		}
+		int leftDiff = n.rank - n.left.rank;
+		int rightDiff = n.rank - n.right.rank;
+		return n.key > lo && n.key < hi
+				&& leftDiff >= 1 && leftDiff <= 2 && rightDiff >= 1 && rightDiff <= 2
+				&& (n.rank == 0 || n.left != EXTERNAL || n.right != EXTERNAL)
+				&& n.subTreeSize == n.left.subTreeSize + n.right.subTreeSize + 1
+				&& isValid(n.left, lo, n.key) && isValid(n.right, n.key, hi);
+	}
+
+	/**
+	 * an immutable node, shared between all the versions that contain it
+	 */
+	private static final class Node {
+		private final int key;
+		private final String value;
+		private final Node left;
+		private final Node right;
+		private final int rank;
+		private final int subTreeSize;
+
+		/**
+		 * external leaf constructor
+		 */
+		private Node() {
+			this.key = -1;
+			this.value = null;
+			this.left = null;
+			this.right = null;
+			this.rank = -1;
+			this.subTreeSize = 0;
+		}
+
+		private Node(int key, String value, Node left, Node right, int rank) {
+			this.key = key;
+			this.value = value;
+			this.left = left;
+			this.right = right;
+			this.rank = rank;
+			this.subTreeSize = left.subTreeSize + right.subTreeSize + 1;
+		}
+
+		private Node withLeft(Node left) {
+			return new Node(this.key, this.value, left, this.right, this.rank);
+		}
+
+		private Node withRight(Node right) {
+			return new Node(this.key, this.value, this.left, right, this.rank);
+		}
+
+		private Node withRank(int rank) {
+			return new Node(this.key, this.value, this.left, this.right, rank);
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/**
+ *
+ * WAVLAugmentation
+ *
+ * A monoid over the items of a {@link WAVLTree}, kept as an aggregate on every node
+ * the same way subTreeSize is: each node holds combine(left aggregate, lift(node), right aggregate),
+ * and only the nodes an operation touches are recomputed.
+ * For example a sum of numeric infos, the min/max of a field parsed from the info, or an OR of flags.
+ *
+ */
+public interface WAVLAugmentation<A> {
+
+	/**
+	 * @return the aggregate of no items, e.g. 0 for a sum
+	 */
+	A identity();
+
+	/**
+	 * @return the aggregate of the single item (key, value)
+	 */
+	A lift(int key, String value);
+
+	/**
+	 * @return the aggregate of the single item held by node, lift(key, value) unless overridden.
+	 * override it to aggregate something else the node holds, such as its {@link WAVLTree.WAVLNode#getAttachment()}
+	 */
+	default A lift(WAVLTree.WAVLNode node) {
+		return lift(node.getKey(), node.getValue());
+	}
+
+	/**
+	 * combines the aggregates of two runs of items, left's keys all smaller than right's.
+	 * must be associative, and identity() must be neutral on both sides
+	 */
+	A combine(A left, A right);
+}
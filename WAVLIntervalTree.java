@@ -0,0 +1,247 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * WAVLIntervalTree
+ *
+ * An index of closed intervals [start, end] with a payload, kept in a {@link WAVLTree} keyed by start.
+ * Intervals sharing a start are kept together in one bucket, sorted by end from the largest,
+ * which is attached to their start's node. The tree is augmented with the maximal end in every subtree,
+ * lifted from each node's bucket, so stabbing and overlap queries skip every subtree whose intervals
+ * all end before the query starts, and stop reading a bucket at its first interval that ends too early.
+ * A query with k results among m distinct starts takes O(log n + m log(n/m) + k): it visits the search path
+ * of its end and the root paths of the reported starts. This is the bound of the max-end descent
+ * (reporting all overlaps of an augmented search tree is O(min(n, k log n)) in general);
+ * O(log n + k) needs a priority search tree, ordered by start and heap ordered by end.
+ *
+ */
+public class WAVLIntervalTree {
+	private final WAVLTree tree;
+	private int size;
+
+	/**
+	 * empty constructor  sets default values
+	 */
+	public WAVLIntervalTree() {
+		this.tree = new WAVLTree(new WAVLAugmentation<Integer>() {
+			public Integer identity() {
+				return Integer.MIN_VALUE;
+			}
+			public Integer lift(int key, String value) {
+				throw new UnsupportedOperationException("interval nodes are lifted from their buckets");
+			}
+			public Integer lift(WAVLTree.WAVLNode node) {
+				// A node is lifted once before its bucket is attached:
+				Bucket bucket = (Bucket) node.getAttachment();
+				return bucket == null ? Integer.MIN_VALUE : bucket.maxEnd();
+			}
+			public Integer combine(Integer left, Integer right) {
+				return Math.max(left, right);
+			}
+		});
+		this.size = 0;
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the index is empty
+	 */
+	public boolean empty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of intervals in the index.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * public void insert(int start, int end, String payload)
+	 *
+	 * adds the interval [start, end], O(log n + intervals sharing start)
+	 * @throws IllegalArgumentException if end < start
+	 */
+	public void insert(int start, int end, String payload) {
+		if(end < start) {
+			throw new IllegalArgumentException("end " + end + " < start " + start);
+		}
+		WAVLTree.WAVLNode node = this.tree.insertNear(null, start, null);
+		Bucket bucket = (Bucket) node.getAttachment();
+		if(bucket == null) {
+			bucket = new Bucket();
+			bucket.add(new Interval(start, end, payload));
+			node.setAttachment(bucket);
+		} else {
+			int maxEnd = bucket.maxEnd();
+			bucket.add(new Interval(start, end, payload));
+			if(bucket.maxEnd() != maxEnd) {
+				node.setAttachment(bucket);
+			}
+		}
+		this.size++;
+	}
+
+	/**
+	 * public boolean delete(int start, int end, String payload)
+	 *
+	 * removes one interval equal to [start, end] with this payload, O(log n + intervals sharing start)
+	 * @return true if such an interval was found
+	 */
+	public boolean delete(int start, int end, String payload) {
+		WAVLTree.WAVLNode node = this.tree.searchNear(null, start);
+		if(node == null) {
+			return false;
+		}
+		Bucket bucket = (Bucket) node.getAttachment();
+		int maxEnd = bucket.maxEnd();
+		if(!bucket.remove(end, payload)) {
+			return false;
+		}
+		this.size--;
+		if(bucket.intervals.isEmpty()) {
+			this.tree.delete(start);
+		} else if(bucket.maxEnd() != maxEnd) {
+			// Setting it again recomputes the max ends on the node's root path:
+			node.setAttachment(bucket);
+		}
+		return true;
+	}
+
+	/**
+	 * public List<Interval> stab(int t)
+	 *
+	 * @return the intervals containing t, in order of their starts. see the class comment for the bound
+	 */
+	public List<Interval> stab(int t) {
+		return overlap(t, t);
+	}
+
+	/**
+	 * public List<Interval> overlap(int lo, int hi)
+	 *
+	 * @return the intervals sharing a point with [lo, hi], in order of their starts
+	 * (empty if lo > hi). see the class comment for the bound
+	 */
+	public List<Interval> overlap(int lo, int hi) {
+		List<Interval> result = new ArrayList<>();
+		if(lo <= hi) {
+			overlap(this.tree.getRoot(), lo, hi, result);
+		}
+		return result;
+	}
+
+	/**
+	 * called by {@link #overlap(int, int)}
+	 * skips subtrees whose max end is below lo, and right subtrees of nodes starting after hi
+	 */
+	private void overlap(WAVLTree.WAVLNode n, int lo, int hi, List<Interval> result) {
+		if(n == null || !n.isInnerNode() || (Integer) n.getAggregate() < lo) {
+			return;
+		}
+		overlap(n.getLeft(), lo, hi, result);
+		if(n.getKey() > hi) {
+			return;
+		}
+		for(Interval interval : ((Bucket) n.getAttachment()).intervals) {
+			if(interval.end < lo) {
+				break;
+			}
+			result.add(interval);
+		}
+		overlap(n.getRight(), lo, hi, result);
+	}
+
+	/**
+	 * the intervals sharing a start, sorted by end from the largest
+	 */
+	private static class Bucket {
+		private final List<Interval> intervals = new ArrayList<>();
+
+		/**
+		 * @return the largest end in the bucket, Integer.MIN_VALUE if it is empty
+		 */
+		private int maxEnd() {
+			return this.intervals.isEmpty() ? Integer.MIN_VALUE : this.intervals.get(0).end;
+		}
+
+		private void add(Interval interval) {
+			this.intervals.add(firstEndingBy(interval.end), interval);
+		}
+
+		private boolean remove(int end, String payload) {
+			for(int i = firstEndingBy(end); i < this.intervals.size() && this.intervals.get(i).end == end; i++) {
+				Interval interval = this.intervals.get(i);
+				if(payload == null ? interval.payload == null : payload.equals(interval.payload)) {
+					this.intervals.remove(i);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * binary search
+		 * @return index of the first interval whose end is <= end, intervals.size() if there is none
+		 */
+		private int firstEndingBy(int end) {
+			int lo = 0;
+			int hi = this.intervals.size();
+			while(lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if(this.intervals.get(mid).end > end) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+	}
+
+	/**
+	 * public class Interval
+	 *
+	 * a closed interval [start, end] and its payload
+	 */
+	public static class Interval {
+		private final int start;
+		private final int end;
+		private final String payload;
+
+		public Interval(int start, int end, String payload) {
+			this.start = start;
+			this.end = end;
+			this.payload = payload;
+		}
+
+		/**
+		 * getter
+		 * @return {@link #start}
+		 */
+		public int getStart() {
+			return this.start;
+		}
+
+		/**
+		 * getter
+		 * @return {@link #end}
+		 */
+		public int getEnd() {
+			return this.end;
+		}
+
+		/**
+		 * getter
+		 * @return {@link #payload}
+		 */
+		public String getPayload() {
+			return this.payload;
+		}
+	}
+}
@@ -0,0 +1,325 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+import java.util.zip.CRC32C;
+
+/**
+ *
+ * WAVLSnapshot
+ *
+ * The binary snapshot format behind {@link WAVLTree#writeSnapshot(Path)} and {@link WAVLTree#openSnapshot(Path)},
+ * also used by {@link PersistentWAVLTree}.
+ * All numbers are little endian:
+ * magic (4 bytes), version (4 bytes), n (4 bytes), reserved (4 bytes),
+ * the n keys in ascending order (4 bytes each),
+ * the n values in the same order, each a length (4 bytes, -1 for null) followed by that many bytes of UTF-8,
+ * and a CRC32C of everything before it (4 bytes).
+ * A snapshot is written to a temporary file next to its path and then moved over it,
+ * so readers never see half a snapshot, and the directory is forced after the move.
+ *
+ */
+class WAVLSnapshot {
+	private static final int MAGIC = 0x4C564157; // "WAVL"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final long WINDOW_SIZE = 1L << 30; // bytes mapped at a time, mappings are limited to 2GB
+	private static final boolean WINDOWS = System.getProperty("os.name", "").startsWith("Windows");
+
+	private WAVLSnapshot() {
+	}
+
+	/**
+	 * called by {@link WAVLTree#writeSnapshot(Path)}
+	 */
+	static void write(WAVLTree tree, Path path) throws IOException {
+		Iterator<WAVLTree.WAVLNode> keys = tree.iterator();
+		Iterator<WAVLTree.WAVLNode> values = tree.iterator();
+		write(path, tree.size(), new PrimitiveIterator.OfInt() {
+			public boolean hasNext() {
+				return keys.hasNext();
+			}
+			public int nextInt() {
+				return keys.next().getKey();
+			}
+		}, new Iterator<String>() {
+			public boolean hasNext() {
+				return values.hasNext();
+			}
+			public String next() {
+				return values.next().getValue();
+			}
+		});
+	}
+
+	/**
+	 * streams n items in order through a direct buffer, all the keys first and then all the values.
+	 * the temporary file is deleted if anything fails; once it is complete it is forced, moved over path,
+	 * and the directory is forced too, so the new name is on disk before the caller deletes what the snapshot replaces
+	 */
+	static void write(Path path, int n, PrimitiveIterator.OfInt keys, Iterator<String> values) throws IOException {
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try {
+			try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				Writer writer = new Writer(channel);
+				writer.putInt(MAGIC);
+				writer.putInt(VERSION);
+				writer.putInt(n);
+				writer.putInt(0);
+				for(int i = 0; i < n; i++) {
+					writer.putInt(keys.nextInt());
+				}
+				for(int i = 0; i < n; i++) {
+					String value = values.next();
+					if(value == null) {
+						writer.putInt(-1);
+					} else {
+						byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+						writer.putInt(bytes.length);
+						writer.put(bytes);
+					}
+				}
+				writer.finish();
+				channel.force(true);
+			}
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch(IOException | RuntimeException e) {
+			try {
+				Files.deleteIfExists(temp);
+			} catch(IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw e;
+		}
+		forceDirectory(path.toAbsolutePath().getParent());
+	}
+
+	/**
+	 * forces a directory, so the files created, renamed or deleted in it so far stay that way after a crash.
+	 * Windows can not open a directory as a channel, and makes its entries durable with the files themselves
+	 */
+	static void forceDirectory(Path directory) throws IOException {
+		if(WINDOWS) {
+			return;
+		}
+		try(FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * builds a tree from the sorted items of a snapshot, such as {@link WAVLTree#fromSorted(PrimitiveIterator.OfInt, Iterator, int)}
+	 */
+	interface Builder<T> {
+		T build(PrimitiveIterator.OfInt keys, Iterator<String> values, int n);
+	}
+
+	/**
+	 * called by {@link WAVLTree#openSnapshot(Path)} and {@link PersistentWAVLTree#openSnapshot(Path)}
+	 * checks the whole file against its checksum, then builds the tree straight from the mapped keys and values
+	 */
+	static <T> T read(Path path, Builder<T> builder) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long end = channel.size() - 4;
+			if(end < HEADER_SIZE) {
+				throw new IOException(path + " is too short to be a WAVLTree snapshot");
+			}
+			verifyChecksum(channel, end, path);
+
+			Cursor header = new Cursor(channel, 0, end);
+			if(header.readInt() != MAGIC) {
+				throw new IOException(path + " is not a WAVLTree snapshot");
+			}
+			int version = header.readInt();
+			if(version != VERSION) {
+				throw new IOException(path + " has snapshot version " + version + ", expected " + VERSION);
+			}
+			int n = header.readInt();
+			long valuesStart = HEADER_SIZE + 4L * n;
+			if(n < 0 || valuesStart + 4L * n > end) {
+				throw new IOException(path + " is corrupt: " + n + " items do not fit");
+			}
+
+			Cursor keys = new Cursor(channel, HEADER_SIZE, valuesStart);
+			Cursor values = new Cursor(channel, valuesStart, end);
+			try {
+				T tree = builder.build(new PrimitiveIterator.OfInt() {
+					public boolean hasNext() {
+						return keys.position < keys.end;
+					}
+					public int nextInt() {
+						return keys.readInt();
+					}
+				}, new Iterator<String>() {
+					public boolean hasNext() {
+						return values.position < values.end;
+					}
+					public String next() {
+						return values.readString();
+					}
+				}, n);
+				if(values.position != end) {
+					throw new IOException(path + " is corrupt: " + (end - values.position) + " bytes after the last value");
+				}
+				return tree;
+			} catch(UncheckedIOException e) {
+				throw e.getCause();
+			} catch(IllegalArgumentException e) {
+				throw new IOException(path + " is corrupt: " + e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * @throws IOException if the CRC32C of the bytes before end differs from the one stored at end
+	 */
+	private static void verifyChecksum(FileChannel channel, long end, Path path) throws IOException {
+		CRC32C crc = new CRC32C();
+		for(long position = 0; position < end; position += WINDOW_SIZE) {
+			crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, end - position)));
+		}
+		int stored = channel.map(FileChannel.MapMode.READ_ONLY, end, 4).order(ByteOrder.LITTLE_ENDIAN).getInt(0);
+		if(stored != (int) crc.getValue()) {
+			throw new IOException(path + " is corrupt: checksum mismatch");
+		}
+	}
+
+	/**
+	 * buffered little endian output to a channel, keeping the running checksum
+	 */
+	private static class Writer {
+		private final FileChannel channel;
+		private final ByteBuffer buffer;
+		private final CRC32C crc;
+
+		private Writer(FileChannel channel) {
+			this.channel = channel;
+			this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			this.crc = new CRC32C();
+		}
+
+		private void putInt(int v) throws IOException {
+			if(this.buffer.remaining() < 4) {
+				flush();
+			}
+			this.buffer.putInt(v);
+		}
+
+		private void put(byte[] bytes) throws IOException {
+			if(this.buffer.remaining() < bytes.length) {
+				flush();
+				if(bytes.length > this.buffer.capacity()) {
+					drain(ByteBuffer.wrap(bytes));
+					return;
+				}
+			}
+			this.buffer.put(bytes);
+		}
+
+		private void flush() throws IOException {
+			this.buffer.flip();
+			drain(this.buffer);
+			this.buffer.clear();
+		}
+
+		private void drain(ByteBuffer source) throws IOException {
+			this.crc.update(source.duplicate());
+			while(source.hasRemaining()) {
+				this.channel.write(source);
+			}
+		}
+
+		/**
+		 * flushes what is buffered and appends the checksum
+		 */
+		private void finish() throws IOException {
+			flush();
+			this.buffer.putInt((int) this.crc.getValue());
+			this.buffer.flip();
+			while(this.buffer.hasRemaining()) {
+				this.channel.write(this.buffer);
+			}
+		}
+	}
+
+	/**
+	 * sequential reader of one section of a mapped snapshot, mapping a window of the file at a time.
+	 * it feeds the key and value streams of a {@link Builder},
+	 * so it reports I/O errors and corrupt data as UncheckedIOException
+	 */
+	private static class Cursor {
+		private final FileChannel channel;
+		private final long end;
+		private long position;
+		private MappedByteBuffer window;
+		private long windowStart;
+		private byte[] scratch; // reused for every value's bytes
+
+		private Cursor(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.end = end;
+			this.position = start;
+			this.window = null;
+			this.windowStart = start;
+			this.scratch = new byte[64];
+		}
+
+		/**
+		 * maps a new window from position if the next count bytes are not in the current one
+		 */
+		private void ensure(int count) {
+			if(this.window != null && this.position + count <= this.windowStart + this.window.limit()) {
+				return;
+			}
+			if(this.position + count > this.end) {
+				throw new UncheckedIOException(new IOException("snapshot is corrupt: section ends at " + this.end));
+			}
+			try {
+				long length = Math.min(Math.max(WINDOW_SIZE, count), this.end - this.position);
+				this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, this.position, length);
+				this.window.order(ByteOrder.LITTLE_ENDIAN);
+				this.windowStart = this.position;
+			} catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		private int readInt() {
+			ensure(4);
+			int v = this.window.getInt((int) (this.position - this.windowStart));
+			this.position += 4;
+			return v;
+		}
+
+		/**
+		 * @return the next length-prefixed UTF-8 value, null for length -1
+		 */
+		private String readString() {
+			int length = readInt();
+			if(length == -1) {
+				return null;
+			}
+			if(length < 0) {
+				throw new UncheckedIOException(new IOException("snapshot is corrupt: value length " + length));
+			}
+			ensure(length);
+			if(this.scratch.length < length) {
+				this.scratch = new byte[Math.max(length, 2 * this.scratch.length)];
+			}
+			this.window.get((int) (this.position - this.windowStart), this.scratch, 0, length);
+			this.position += length;
+			return new String(this.scratch, 0, length, StandardCharsets.UTF_8);
+		}
+	}
+}
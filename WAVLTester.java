@@ -74,6 +74,9 @@ public class Test{
 	private Operation[] _operations;
 
 	WAVLTree _tree;
+	IntWAVLTree<String> _intTree;
+	LongWAVLTree<String> _longTree;
+	GenericWAVLTree<Long, String> _genericTree;
 	private ArrayList<Integer> _existingKeys;
 	boolean preMade = false;
 	Error_Code _status;
@@ -84,6 +87,9 @@ public class Test{
 	            if (maxOperPerTest < MIN_OPER_COUNT)
 	                maxOperPerTest = MIN_OPER_COUNT;
 	            _tree = new WAVLTree();
+	            _intTree = new IntWAVLTree<>();
+	            _longTree = new LongWAVLTree<>();
+	            _genericTree = new GenericWAVLTree<>();
 
 	            Random r = new Random();
 	            _operationsCount = r.nextInt(maxOperPerTest - MIN_OPER_COUNT + 1) + MIN_OPER_COUNT;
@@ -95,6 +101,9 @@ public class Test{
 	            _status = null;
 	            _operations = os;
 	            _tree = new WAVLTree();
+	            _intTree = new IntWAVLTree<>();
+	            _longTree = new LongWAVLTree<>();
+	            _genericTree = new GenericWAVLTree<>();
 	            _operationsCount = os.length;
 	            _existingKeys = new ArrayList<Integer>();
 	            preMade = true;
@@ -183,7 +192,8 @@ public class Test{
 	            int i;
 	            while(true)
 	            {
-	                i = r.nextInt(_operationsCount*100);
+	                // negative keys too, -1 included, must be valid keys:
+	                i = r.nextInt(_operationsCount*100) - _operationsCount*10;
 	                if (!_existingKeys.contains(i))
 	                {
 	                    return i;
@@ -206,18 +216,47 @@ public class Test{
 	            String info = _operations[i].getValue();
 	            if (t == OperType.Insert)
 	            {
-	                _tree.insert(k, info);
+	                _lastResult = _tree.insert(k, info);
+	                _lastIntResult = _intTree.insert(k, info);
+	                _lastLongResult = _longTree.insert(longKey(k), info);
+	                _lastGenericResult = _genericTree.insert(longKey(k), info);
 	                _existingKeys.add(k);
 	            }
 	            else if (t == OperType.ExistingKeyInsert)
-	                _tree.insert(k, info);
+	            {
+	                _lastResult = _tree.insert(k, info);
+	                _lastIntResult = _intTree.insert(k, info);
+	                _lastLongResult = _longTree.insert(longKey(k), info);
+	                _lastGenericResult = _genericTree.insert(longKey(k), info);
+	            }
 	            else if (t == OperType.Delete)
 	            {
-	                _tree.delete(k);
+	                _lastResult = _tree.delete(k);
+	                _lastIntResult = _intTree.delete(k);
+	                _lastLongResult = _longTree.delete(longKey(k));
+	                _lastGenericResult = _genericTree.delete(longKey(k));
 	                _existingKeys.remove((Integer)k);
 	            }
 	            else
-	                _tree.delete(k);
+	            {
+	                _lastResult = _tree.delete(k);
+	                _lastIntResult = _intTree.delete(k);
+	                _lastLongResult = _longTree.delete(longKey(k));
+	                _lastGenericResult = _genericTree.delete(longKey(k));
+	            }
+	        }
+	        private int _lastResult;
+	        private int _lastIntResult;
+	        private int _lastLongResult;
+	        private int _lastGenericResult;
+
+	        /**
+	         * the key the long and generic trees hold for key k of the other trees:
+	         * in the same order, but outside the int range
+	         */
+	        private long longKey(int k)
+	        {
+	            return ((long) k << 32) | 5;
 	        }
 
 	        private Error_Code CheckTree()
@@ -237,7 +276,7 @@ public class Test{
 	                return Error_Code.Missing_Nodes;
 	            else if (res == 2)
 	                return Error_Code.Has_Deleted_Nodes;
-	            if (!checkExtNodes())
+	            if (!checkExtNodes() || !checkSentinel())
 	                return Error_Code.Bad_External_Nodes;
 	            if (!checkIfEmptyIsEmpty())
 	                return Error_Code.empty_Should_Be_True;
@@ -257,6 +296,56 @@ public class Test{
 
 	            if (!checkSelect())
 	                return Error_Code.Bad_Select;
+	            if (!checkRank())
+	                return Error_Code.Bad_Rank;
+	            if (!checkIntTree())
+	                return Error_Code.Bad_Int_Tree;
+	            if (!checkLongTree())
+	                return Error_Code.Bad_Long_Tree;
+	            if (!checkGenericTree())
+	                return Error_Code.Bad_Generic_Tree;
+	            if (!checkFromSorted())
+	                return Error_Code.Bad_From_Sorted;
+	            if (!checkIterators())
+	                return Error_Code.Bad_Iterator;
+	            if (!checkNavigation())
+	                return Error_Code.Bad_Navigation;
+	            if (!checkSplitJoin())
+	                return Error_Code.Bad_Split_Join;
+	            if (!checkSetOperations())
+	                return Error_Code.Bad_Set_Operations;
+	            if (!checkConcurrent())
+	                return Error_Code.Bad_Concurrent;
+	            if (!checkPersistent())
+	                return Error_Code.Bad_Persistent;
+	            if (!checkBatch())
+	                return Error_Code.Bad_Batch;
+	            if (!checkFinger())
+	                return Error_Code.Bad_Finger;
+	            if (!checkAggregate())
+	                return Error_Code.Bad_Aggregate;
+	            if (!checkInterval())
+	                return Error_Code.Bad_Interval;
+	            if (!checkStream())
+	                return Error_Code.Bad_Stream;
+	            if (!checkDeleteRange())
+	                return Error_Code.Bad_Delete_Range;
+	            if (!checkNodePool())
+	                return Error_Code.Bad_Node_Pool;
+	            if (!checkFrozen())
+	                return Error_Code.Bad_Frozen;
+	            if (!checkBucketed())
+	                return Error_Code.Bad_Bucketed;
+	            if (!checkSnapshot())
+	                return Error_Code.Bad_Snapshot;
+	            if (!checkDurable())
+	                return Error_Code.Bad_Durable;
+	            if (!checkDurableRecovery())
+	                return Error_Code.Bad_Durable_Recovery;
+	            if (!checkDurableModes())
+	                return Error_Code.Bad_Durable_Modes;
+	            if (!checkOffHeap())
+	                return Error_Code.Bad_Off_Heap;
 
 	            return Error_Code.OK;
 	        }
@@ -385,6 +474,30 @@ public class Test{
 
 	            return checkExtNodes_rec(_tree.getRoot());
 	        }
+	        /**
+	         * the external leaf shared by every tree must ignore all its setters,
+	         * and an empty tree must have no root
+	         */
+	        private boolean checkSentinel()
+	        {
+	            if (new WAVLTree().getRoot() != null)
+	                return false;
+	            if (_tree.empty())
+	                return _tree.getRoot() == null;
+	            WAVLTree.WAVLNode root = _tree.getRoot();
+	            WAVLTree.WAVLNode leaf = root;
+	            while (leaf.isInnerNode())
+	                leaf = leaf.getLeft();
+	            leaf.setRank(0);
+	            leaf.setSubTreeSize(1);
+	            leaf.setKey(7);
+	            leaf.setValue("7");
+	            leaf.setLeft(root);
+	            leaf.setRight(root);
+	            leaf.setParent(root);
+	            return !leaf.isInnerNode() && leaf.getRank() == -1 && leaf.getSubTreeSize() == 0 && leaf.getKey() == -1
+	                    && leaf.getValue() == null && leaf.getLeft() == null && leaf.getRight() == null && leaf.getParent() == null;
+	        }
 	        private boolean checkExtNodes_rec(WAVLTree.WAVLNode node)
 	        {
 	            if (node == null)
@@ -516,11 +629,1170 @@ public class Test{
 	                    treeSelect = _tree.select(i);
 	                    return false;
 	                }
+	                if (!_existingKeys.get(i-1).equals(_tree.selectKey(i)))
+	                    return false;
+	            }
+	            if (_tree.select(size + 1) != null || _tree.selectKey(size + 1) != null || _tree.selectKey(0) != null)
+	                return false;
+
+	            return true;
+	        }
+
+	        private boolean checkRank()
+	        {
+	            Collections.sort(_existingKeys);
+	            for (int i = 0; i < _existingKeys.size(); i++)
+	            {
+	                int k = _existingKeys.get(i);
+	                if (_tree.rank(k) != i || _tree.rank(k + 1) != i + 1)
+	                    return false;
+	                if (_tree.countInRange(_existingKeys.get(0), k) != i + 1)
+	                    return false;
+	                if (_tree.countInRange(k, k) != 1 || _tree.countInRange(k + 1, k) != 0)
+	                    return false;
+	            }
+	            return _tree.countInRange(Integer.MIN_VALUE, Integer.MAX_VALUE) == _tree.size();
+	        }
+
+	        /**
+	         * splitting a copy of the tree and joining the halves back must give valid WAVL trees throughout
+	         */
+	        private boolean checkSplitJoin()
+	        {
+	            Collections.sort(_existingKeys);
+	            int k = _existingKeys.isEmpty() ? getNewKey() : _existingKeys.get(_existingKeys.size() / 2);
+	            WAVLTree[] parts = WAVLTree.fromSorted(_tree.keysToArray(), _tree.infoToArray()).split(k);
+	            int lessCount = 0;
+	            for (int key : _existingKeys)
+	                if (key < k)
+	                    lessCount++;
+	            if (parts[0].size() != lessCount || parts[1].size() != _existingKeys.size() - lessCount)
+	                return false;
+	            for (WAVLTree part : parts)
+	                if (!isValid(part))
+	                    return false;
+	            if (!parts[0].empty() && parts[0].keysToArray()[lessCount - 1] >= k)
+	                return false;
+	            if (!parts[1].empty() && parts[1].keysToArray()[0] < k)
+	                return false;
+
+	            if (parts[1].empty())
+	                return true;
+	            int mid = parts[1].selectKey(1);
+	            parts[1].delete(mid);
+	            WAVLTree joined = WAVLTree.join(parts[0], mid, "" + mid, parts[1]);
+	            return parts[0].empty() && parts[1].empty() && isValid(joined)
+	                    && java.util.Arrays.equals(joined.keysToArray(), _tree.keysToArray())
+	                    && java.util.Arrays.equals(joined.infoToArray(), _tree.infoToArray());
+	        }
+
+	        /**
+	         * union, intersection and difference with a tree holding every other existing key and some new ones
+	         * must match the same operations on sorted sets
+	         */
+	        private boolean checkSetOperations()
+	        {
+	            java.util.TreeSet<Integer> mine = new java.util.TreeSet<>(_existingKeys);
+	            java.util.TreeSet<Integer> other = new java.util.TreeSet<>();
+	            for (int i = 0; i < _existingKeys.size(); i += 2)
+	                other.add(_existingKeys.get(i));
+	            for (int i = 0; i < _existingKeys.size() / 2; i++)
+	                other.add(getNewKey());
+
+	            java.util.TreeSet<Integer> union = new java.util.TreeSet<>(mine);
+	            union.addAll(other);
+	            java.util.TreeSet<Integer> intersection = new java.util.TreeSet<>(mine);
+	            intersection.retainAll(other);
+	            java.util.TreeSet<Integer> difference = new java.util.TreeSet<>(mine);
+	            difference.removeAll(other);
+
+	            return sameKeys(WAVLTree.union(copyOf(_tree), treeOf(other)), union)
+	                    && sameKeys(WAVLTree.intersection(copyOf(_tree), treeOf(other)), intersection)
+	                    && sameKeys(WAVLTree.difference(copyOf(_tree), treeOf(other)), difference);
+	        }
+
+	        /**
+	         * the lock free queries of a ConcurrentWAVLTree holding the same items must agree with the tree,
+	         * also while another thread changes it
+	         */
+	        private boolean checkConcurrent()
+	        {
+	            ConcurrentWAVLTree concurrent = new ConcurrentWAVLTree();
+	            int[] keys = _tree.keysToArray();
+	            String[] infos = _tree.infoToArray();
+	            for (int i = 0; i < keys.length; i++)
+	                concurrent.insert(keys[i], infos[i]);
+	            if (concurrent.size() != _tree.size() || !java.util.Arrays.equals(concurrent.keysToArray(), keys))
+	                return false;
+	            for (int i = 0; i < keys.length; i++)
+	            {
+	                int k = keys[i];
+	                if (!infos[i].equals(concurrent.search(k)) || !infos[i].equals(concurrent.select(i + 1))
+	                        || !java.util.Objects.equals(concurrent.floorKey(k), _tree.floorKey(k))
+	                        || !java.util.Objects.equals(concurrent.higherKey(k), _tree.higherKey(k))
+	                        || !java.util.Objects.equals(concurrent.lowerKey(k), _tree.lowerKey(k))
+	                        || !java.util.Objects.equals(concurrent.ceilingKey(k + 1), _tree.ceilingKey(k + 1)))
+	                    return false;
+	            }
+	            int k = getNewKey();
+	            return java.util.Objects.equals(concurrent.search(k), _tree.search(k)) && checkConcurrentReaders(concurrent);
+	        }
+
+	        /**
+	         * readers running against a writer that inserts and deletes keys above the tree's keys,
+	         * rotating the nodes they walk through, must always see the tree's keys:
+	         * each found by search, select and floorKey, and nothing but a written key after the largest
+	         */
+	        private boolean checkConcurrentReaders(ConcurrentWAVLTree concurrent)
+	        {
+	            int[] keys = _tree.keysToArray();
+	            String[] infos = _tree.infoToArray();
+	            int base = keys.length == 0 ? 0 : keys[keys.length - 1] + 1;
+	            java.util.concurrent.atomic.AtomicBoolean done = new java.util.concurrent.atomic.AtomicBoolean();
+	            java.util.concurrent.atomic.AtomicBoolean failed = new java.util.concurrent.atomic.AtomicBoolean();
+	            Thread writer = new Thread(() -> {
+	                Random r = new Random();
+	                for (int i = 0; i < 2000; i++)
+	                {
+	                    int w = base + r.nextInt(64);
+	                    if (concurrent.insert(w, "written") < 0)
+	                        concurrent.delete(w);
+	                }
+	                done.set(true);
+	            });
+	            Thread[] readers = new Thread[3];
+	            for (int t = 0; t < readers.length; t++)
+	            {
+	                readers[t] = new Thread(() -> {
+	                    Random r = new Random();
+	                    // at least one pass, however fast the writer is:
+	                    do
+	                    {
+	                        if (keys.length == 0)
+	                        {
+	                            Integer first = concurrent.selectKey(1);
+	                            if (first != null && (first < base || first >= base + 64))
+	                                failed.set(true);
+	                            continue;
+	                        }
+	                        int i = r.nextInt(keys.length);
+	                        Integer above = concurrent.higherKey(keys[keys.length - 1]);
+	                        if (!infos[i].equals(concurrent.search(keys[i])) || !infos[i].equals(concurrent.select(i + 1))
+	                                || !Integer.valueOf(keys[i]).equals(concurrent.floorKey(keys[i]))
+	                                || !Integer.valueOf(keys[i]).equals(concurrent.selectKey(i + 1))
+	                                || (i > 0 && !Integer.valueOf(keys[i - 1]).equals(concurrent.lowerKey(keys[i])))
+	                                || (above != null && (above < base || above >= base + 64)))
+	                            failed.set(true);
+	                    } while (!done.get() && !failed.get());
+	                });
+	            }
+	            writer.start();
+	            for (Thread reader : readers)
+	                reader.start();
+	            try
+	            {
+	                writer.join();
+	                for (Thread reader : readers)
+	                    reader.join();
+	            }
+	            catch (InterruptedException e)
+	            {
+	                Thread.currentThread().interrupt();
+	                return false;
+	            }
+	            return !failed.get() && java.util.Arrays.equals(java.util.Arrays.copyOf(concurrent.keysToArray(), keys.length), keys);
+	        }
+
+	        /**
+	         * a snapshot of a persistent copy of the tree must keep its items while the copy is emptied
+	         */
+	        private boolean checkPersistent()
+	        {
+	            PersistentWAVLTree persistent = new PersistentWAVLTree();
+	            int[] keys = _tree.keysToArray();
+	            String[] infos = _tree.infoToArray();
+	            for (int i = 0; i < keys.length; i++)
+	                persistent.insert(keys[i], infos[i]);
+	            PersistentWAVLTree snapshot = persistent.snapshot();
+	            for (int k : keys)
+	            {
+	                if (persistent.delete(k) == -1 || !persistent.isValid())
+	                    return false;
+	            }
+	            if (!persistent.empty() || persistent.minKey() != null || !snapshot.isValid() || snapshot.size() != keys.length
+	                    || !java.util.Arrays.equals(snapshot.keysToArray(), keys)
+	                    || !java.util.Arrays.equals(snapshot.infoToArray(), infos))
+	                return false;
+
+	            // keys stored with null values must still be found by insert and delete:
+	            for (int k : keys)
+	            {
+	                if (persistent.insert(k, null) == -1 || persistent.insert(k, null) != -1 || !persistent.isValid())
+	                    return false;
+	            }
+	            if (persistent.size() != keys.length || (keys.length > 0 && persistent.minKey() != keys[0]))
+	                return false;
+	            for (int k : keys)
+	            {
+	                if (persistent.delete(k) == -1 || persistent.delete(k) != -1 || !persistent.isValid())
+	                    return false;
+	            }
+	            return persistent.empty();
+	        }
+
+	        /**
+	         * deleting every other key of a copy in one batch and inserting them back in another
+	         * must keep the copy valid and give back the tree's items
+	         */
+	        private boolean checkBatch()
+	        {
+	            WAVLTree copy = copyOf(_tree);
+	            int[] keys = _tree.keysToArray();
+	            String[] infos = _tree.infoToArray();
+	            int[] half = new int[(keys.length + 1) / 2];
+	            String[] halfInfos = new String[half.length];
+	            for (int i = 0; i < half.length; i++)
+	            {
+	                half[half.length - 1 - i] = keys[2 * i];
+	                halfInfos[half.length - 1 - i] = infos[2 * i];
+	            }
+	            if (copy.deleteAll(half) < 0 || copy.size() != keys.length - half.length || !isValid(copy))
+	                return false;
+	            if (copy.insertAll(half, halfInfos) < 0 || !isValid(copy))
+	                return false;
+	            return java.util.Arrays.equals(copy.keysToArray(), keys) && java.util.Arrays.equals(copy.infoToArray(), infos);
+	        }
+
+	        /**
+	         * searching every key from the previous key's node (both directions) and rebuilding the tree
+	         * with hinted inserts must agree with plain searches, also after the smallest and largest keys
+	         * were deleted and appended again from their neighbours
+	         */
+	        private boolean checkFinger()
+	        {
+	            int[] keys = _tree.keysToArray();
+	            WAVLTree.WAVLNode finger = null;
+	            for (int i = keys.length - 1; i >= 0; i--)
+	            {
+	                finger = _tree.searchNear(finger, keys[i]);
+	                if (finger == null || finger.getKey() != keys[i] || _tree.searchNear(finger, keys[i] + 1) != _tree.searchNear(null, keys[i] + 1))
+	                    return false;
+	            }
+	            WAVLTree rebuilt = new WAVLTree();
+	            finger = null;
+	            for (int k : keys)
+	                finger = rebuilt.insertNear(finger, k, _tree.search(k));
+	            if (!isValid(rebuilt) || !java.util.Arrays.equals(rebuilt.keysToArray(), keys)
+	                    || !java.util.Arrays.equals(rebuilt.infoToArray(), _tree.infoToArray()))
+	                return false;
+	            if (keys.length < 2)
+	                return true;
+	            // the largest and smallest nodes change: searches and appends past both ends from the new ones
+	            rebuilt.delete(keys[keys.length - 1]);
+	            rebuilt.delete(keys[0]);
+	            WAVLTree.WAVLNode max = rebuilt.searchNear(null, keys[keys.length - 2]);
+	            WAVLTree.WAVLNode min = rebuilt.searchNear(null, keys[1]);
+	            if (rebuilt.searchNear(max, keys[keys.length - 1]) != null || rebuilt.searchNear(min, keys[0]) != null)
+	                return false;
+	            max = rebuilt.insertNear(max, keys[keys.length - 1], _tree.search(keys[keys.length - 1]));
+	            min = rebuilt.insertNear(min, keys[0], _tree.search(keys[0]));
+	            if (rebuilt.searchNear(max, keys[keys.length - 1] + 1) != null || rebuilt.searchNear(min, keys[0] - 1) != null)
+	                return false;
+	            for (int k : keys)
+	                if (rebuilt.searchNear(max, k) == null || rebuilt.searchNear(min, k) == null)
+	                    return false;
+	            if (!isValid(rebuilt) || !java.util.Arrays.equals(rebuilt.keysToArray(), keys))
+	                return false;
+	            // with a node pool, the deleted largest node comes back holding a smaller key and must not pass for the largest:
+	            rebuilt.setNodePoolCapacity(1);
+	            for (int i = 0; i + 2 < keys.length; i++)
+	            {
+	                if (keys[i] + 1 == keys[i + 1])
+	                    continue;
+	                rebuilt.searchNear(max, keys[keys.length - 1] + 1);
+	                rebuilt.delete(keys[keys.length - 1]);
+	                WAVLTree.WAVLNode reused = rebuilt.insertNear(null, keys[i] + 1, "reused");
+	                return reused == max && rebuilt.searchNear(reused, keys[keys.length - 2]) != null && isValid(rebuilt);
 	            }
+	            return true;
+	        }
+
+	        /**
+	         * a copy keeping the sum of keys must answer range sums like a scan, also after deleting every third key
+	         */
+	        private boolean checkAggregate()
+	        {
+	            WAVLTree summed = new WAVLTree(new WAVLAugmentation<Long>()
+	            {
+	                public Long identity() { return 0L; }
+	                public Long lift(int key, String value) { return (long) key; }
+	                public Long combine(Long left, Long right) { return left + right; }
+	            });
+	            int[] keys = _tree.keysToArray();
+	            for (int k : keys)
+	                summed.insert(k, _tree.search(k));
+	            for (int i = 0; i < keys.length; i += 3)
+	                summed.delete(keys[i]);
+	            int[] left = summed.keysToArray();
+	            long total = 0;
+	            for (int k : left)
+	                total += k;
+	            long prefix = 0;
+	            for (int i = 0; i < left.length; i++)
+	            {
+	                prefix += left[i];
+	                if (summed.<Long>aggregate(Integer.MIN_VALUE, left[i]) != prefix
+	                        || summed.<Long>aggregate(left[i], Integer.MAX_VALUE) != total - prefix + left[i]
+	                        || summed.<Long>aggregate(left[i], left[i]) != left[i])
+	                    return false;
+	            }
+	            return summed.<Long>aggregate(1, 0) == 0 && isValid(summed);
+	        }
 
+	        /**
+	         * stabbing an index of the intervals [k, k + |k| % 100 / 2] and [k, k + |k| % 100] at every key and key + 50,
+	         * after deleting the longer interval of every third key and both of every fifth, must find the same intervals as a scan
+	         */
+	        private boolean checkInterval()
+	        {
+	            WAVLIntervalTree intervals = new WAVLIntervalTree();
+	            ArrayList<WAVLIntervalTree.Interval> live = new ArrayList<>();
+	            int[] keys = _tree.keysToArray();
+	            for (int k : keys)
+	            {
+	                for (int end : new int[] { k + Math.abs(k) % 100 / 2, k + Math.abs(k) % 100 })
+	                {
+	                    intervals.insert(k, end, _tree.search(k));
+	                    live.add(new WAVLIntervalTree.Interval(k, end, _tree.search(k)));
+	                }
+	            }
+	            for (int i = 0; i < keys.length; i += 3)
+	            {
+	                int end = keys[i] + Math.abs(keys[i]) % 100;
+	                if (!intervals.delete(keys[i], end, _tree.search(keys[i])))
+	                    return false;
+	                for (int j = 0; j < live.size(); j++)
+	                    if (live.get(j).getStart() == keys[i] && live.get(j).getEnd() == end)
+	                    {
+	                        live.remove(j);
+	                        break;
+	                    }
+	            }
+	            // every fifth start loses all its intervals, and with them its node:
+	            for (int i = 0; i < keys.length; i += 5)
+	                for (int j = live.size() - 1; j >= 0; j--)
+	                    if (live.get(j).getStart() == keys[i])
+	                    {
+	                        WAVLIntervalTree.Interval gone = live.remove(j);
+	                        if (!intervals.delete(gone.getStart(), gone.getEnd(), gone.getPayload()))
+	                            return false;
+	                    }
+	            if (intervals.size() != live.size() || (keys.length > 0 && intervals.delete(keys[0], keys[0] - 1, null)))
+	                return false;
+	            for (int k : keys)
+	            {
+	                for (int t : new int[] { k, k + 50 })
+	                {
+	                    int expected = 0;
+	                    for (WAVLIntervalTree.Interval interval : live)
+	                        if (interval.getStart() <= t && interval.getEnd() >= t)
+	                            expected++;
+	                    java.util.List<WAVLIntervalTree.Interval> found = intervals.stab(t);
+	                    if (found.size() != expected)
+	                        return false;
+	                    for (WAVLIntervalTree.Interval interval : found)
+	                        if (interval.getStart() > t || interval.getEnd() < t || !interval.getPayload().equals(_tree.search(interval.getStart())))
+	                            return false;
+	                }
+	            }
 	            return true;
 	        }
 
+	        /**
+	         * sequential and parallel streams must give the keys in order, with an exact size
+	         */
+	        private boolean checkStream()
+	        {
+	            int[] keys = _tree.keysToArray();
+	            return _tree.spliterator().getExactSizeIfKnown() == keys.length
+	                    && java.util.Arrays.equals(_tree.stream().mapToInt(WAVLTree.WAVLNode::getKey).toArray(), keys)
+	                    && java.util.Arrays.equals(_tree.stream().parallel().mapToInt(WAVLTree.WAVLNode::getKey).toArray(), keys)
+	                    && java.util.Arrays.equals(_tree.stream().parallel().map(WAVLTree.WAVLNode::getValue).toArray(String[]::new), _tree.infoToArray());
+	        }
+
+	        /**
+	         * deleting the middle third of a copy's keys, then polling two keys off each end,
+	         * must leave the expected keys in valid trees
+	         */
+	        private boolean checkDeleteRange()
+	        {
+	            WAVLTree copy = copyOf(_tree);
+	            int[] keys = _tree.keysToArray();
+	            if (keys.length < 3)
+	                return copy.deleteRange(Integer.MIN_VALUE, Integer.MAX_VALUE) == keys.length && copy.empty();
+	            int lo = keys[keys.length / 3];
+	            int hi = keys[2 * keys.length / 3];
+	            java.util.ArrayList<Integer> expected = new java.util.ArrayList<>();
+	            for (int k : keys)
+	                if (k < lo || k > hi)
+	                    expected.add(k);
+	            if (copy.deleteRange(lo, hi) != keys.length - expected.size() || !isValid(copy))
+	                return false;
+	            WAVLTree first = copy.pollFirst(2);
+	            WAVLTree last = copy.pollLast(2);
+	            if (!isValid(first) || !isValid(last) || !isValid(copy))
+	                return false;
+	            java.util.ArrayList<Integer> found = new java.util.ArrayList<>();
+	            for (WAVLTree part : new WAVLTree[] { first, copy, last })
+	                for (int k : part.keysToArray())
+	                    found.add(k);
+	            return found.equals(expected) && first.size() == Math.min(2, expected.size())
+	                    && last.size() == Math.min(2, expected.size() - first.size());
+	        }
+
+	        /**
+	         * deleting and reinserting every key of a pooled copy, so inserts reuse deleted nodes,
+	         * must give back a valid copy of the tree
+	         */
+	        private boolean checkNodePool()
+	        {
+	            WAVLTree copy = copyOf(_tree);
+	            copy.setNodePoolCapacity(4);
+	            int[] keys = _tree.keysToArray();
+	            String[] infos = _tree.infoToArray();
+	            for (int i = 0; i < keys.length; i++)
+	            {
+	                if (copy.delete(keys[i]) < 0 || copy.insert(keys[i], infos[i]) < 0 || !isValid(copy))
+	                    return false;
+	            }
+	            return java.util.Arrays.equals(copy.keysToArray(), keys) && java.util.Arrays.equals(copy.infoToArray(), infos);
+	        }
+	        /**
+	         * a frozen copy must answer every query like the tree it was made of,
+	         * and must not see later changes to it
+	         */
+	        private boolean checkFrozen()
+	        {
+	            WAVLTree copy = copyOf(_tree);
+	            FrozenWAVLTree frozen = copy.freeze();
+	            int[] keys = _tree.keysToArray();
+	            if (frozen.size() != keys.length || !java.util.Arrays.equals(frozen.keysToArray(), keys)
+	                    || !java.util.Arrays.equals(frozen.infoToArray(), _tree.infoToArray()))
+	                return false;
+	            ArrayList<Integer> probes = new ArrayList<>(_existingKeys);
+	            for (int k : _existingKeys)
+	            {
+	                probes.add(k - 1);
+	                probes.add(k + 1);
+	            }
+	            probes.add(getNewKey());
+	            for (int k : probes)
+	            {
+	                if (!java.util.Objects.equals(frozen.search(k), _tree.search(k)) || frozen.rank(k) != _tree.rank(k)
+	                        || !java.util.Objects.equals(frozen.floorKey(k), _tree.floorKey(k))
+	                        || !java.util.Objects.equals(frozen.ceilingKey(k), _tree.ceilingKey(k))
+	                        || !java.util.Objects.equals(frozen.lowerKey(k), _tree.lowerKey(k))
+	                        || !java.util.Objects.equals(frozen.higherKey(k), _tree.higherKey(k)))
+	                    return false;
+	            }
+	            for (int i = 0; i <= keys.length + 1; i++)
+	            {
+	                if (!java.util.Objects.equals(frozen.selectKey(i), _tree.selectKey(i)) || !java.util.Objects.equals(frozen.select(i), _tree.select(i)))
+	                    return false;
+	            }
+	            if (keys.length > 0)
+	            {
+	                int lo = keys[keys.length / 3] - 1;
+	                int hi = keys[2 * keys.length / 3];
+	                ArrayList<Integer> scanned = new ArrayList<>();
+	                frozen.forEachInRange(lo, hi, (key, value) -> scanned.add(key));
+	                if (scanned.size() != _tree.countInRange(lo, hi) || frozen.countInRange(lo, hi) != scanned.size()
+	                        || frozen.keysInRange(lo, hi).length != scanned.size())
+	                    return false;
+	                copy.delete(keys[0]);
+	            }
+	            return frozen.size() == keys.length && java.util.Arrays.equals(frozen.keysToArray(), keys);
+	        }
+	        /**
+	         * a bucketed tree filled in shuffled order must hold the same items as the tree,
+	         * and must stay valid while every other item is deleted again
+	         */
+	        private boolean checkBucketed()
+	        {
+	            int[] keys = _tree.keysToArray();
+	            String[] infos = _tree.infoToArray();
+	            ArrayList<Integer> order = new ArrayList<>();
+	            for (int i = 0; i < keys.length; i++)
+	                order.add(i);
+	            Collections.shuffle(order, new Random(keys.length));
+	            BucketedWAVLTree bucketed = new BucketedWAVLTree();
+	            for (int i : order)
+	            {
+	                if (bucketed.insert(keys[i], infos[i]) < 0)
+	                    return false;
+	            }
+	            if (!bucketed.isValid() || !java.util.Arrays.equals(bucketed.keysToArray(), keys)
+	                    || !java.util.Arrays.equals(bucketed.infoToArray(), infos))
+	                return false;
+	            for (int i = 0; i <= keys.length + 1; i++)
+	            {
+	                if (!java.util.Objects.equals(bucketed.selectKey(i), _tree.selectKey(i)) || !java.util.Objects.equals(bucketed.select(i), _tree.select(i)))
+	                    return false;
+	            }
+	            for (int k : keys)
+	            {
+	                if (!java.util.Objects.equals(bucketed.search(k), _tree.search(k)) || bucketed.rank(k) != _tree.rank(k)
+	                        || bucketed.insert(k, "again") != -1)
+	                    return false;
+	            }
+	            for (int i = 0; i < order.size(); i += 2)
+	            {
+	                if (bucketed.delete(keys[order.get(i)]) < 0 || bucketed.delete(keys[order.get(i)]) != -1)
+	                    return false;
+	            }
+	            return bucketed.isValid() && bucketed.size() == keys.length / 2;
+	        }
+	        /**
+	         * a tree written with writeSnapshot must come back equal and valid from openSnapshot, also through a persistent tree,
+	         * and a snapshot with a flipped bit must be rejected
+	         */
+	        private boolean checkSnapshot()
+	        {
+	            java.nio.file.Path path = null;
+	            try
+	            {
+	                path = java.nio.file.Files.createTempFile("wavl", ".snapshot");
+	                _tree.writeSnapshot(path);
+	                WAVLTree loaded = WAVLTree.openSnapshot(path);
+	                if (!isValid(loaded) || !java.util.Arrays.equals(loaded.keysToArray(), _tree.keysToArray())
+	                        || !java.util.Arrays.equals(loaded.infoToArray(), _tree.infoToArray()))
+	                    return false;
+	                // a persistent tree reads and writes the same format:
+	                PersistentWAVLTree persistent = PersistentWAVLTree.openSnapshot(path);
+	                if (!persistent.isValid() || !java.util.Arrays.equals(persistent.keysToArray(), _tree.keysToArray())
+	                        || !java.util.Arrays.equals(persistent.infoToArray(), _tree.infoToArray()))
+	                    return false;
+	                persistent.writeSnapshot(path);
+	                loaded = WAVLTree.openSnapshot(path);
+	                if (!isValid(loaded) || !java.util.Arrays.equals(loaded.keysToArray(), _tree.keysToArray())
+	                        || !java.util.Arrays.equals(loaded.infoToArray(), _tree.infoToArray()))
+	                    return false;
+	                byte[] bytes = java.nio.file.Files.readAllBytes(path);
+	                bytes[bytes.length / 2] ^= 1;
+	                java.nio.file.Files.write(path, bytes);
+	                try
+	                {
+	                    WAVLTree.openSnapshot(path);
+	                    return false;
+	                }
+	                catch (java.io.IOException e)
+	                {
+	                    return true;
+	                }
+	            }
+	            catch (java.io.IOException e)
+	            {
+	                return false;
+	            }
+	            finally
+	            {
+	                try
+	                {
+	                    if (path != null)
+	                        java.nio.file.Files.deleteIfExists(path);
+	                }
+	                catch (java.io.IOException e)
+	                {
+	                    // nothing left to check
+	                }
+	            }
+	        }
+	        /**
+	         * the tree's items inserted into a durable tree, with a third deleted again,
+	         * must all come back when its directory is reopened, across log compactions
+	         */
+	        private boolean checkDurable()
+	        {
+	            java.nio.file.Path directory = null;
+	            try
+	            {
+	                directory = java.nio.file.Files.createTempDirectory("wavl-log");
+	                int[] keys = _tree.keysToArray();
+	                String[] infos = _tree.infoToArray();
+	                try (DurableWAVLTree durable = new DurableWAVLTree(directory, DurableWAVLTree.Durability.BATCH))
+	                {
+	                    durable.setCompactionThreshold(512);
+	                    for (int i = 0; i < keys.length; i++)
+	                        durable.insert(keys[i], infos[i]);
+	                    for (int i = 0; i < keys.length; i += 3)
+	                        durable.delete(keys[i]);
+	                }
+	                WAVLTree expected = copyOf(_tree);
+	                for (int i = 0; i < keys.length; i += 3)
+	                    expected.delete(keys[i]);
+	                try (DurableWAVLTree durable = new DurableWAVLTree(directory, DurableWAVLTree.Durability.BATCH))
+	                {
+	                    return java.util.Arrays.equals(durable.keysToArray(), expected.keysToArray())
+	                            && java.util.Arrays.equals(durable.infoToArray(), expected.infoToArray());
+	                }
+	            }
+	            catch (java.io.IOException e)
+	            {
+	                return false;
+	            }
+	            finally
+	            {
+	                deleteDirectory(directory);
+	            }
+	        }
+	        /**
+	         * a log whose last record was cut off or corrupted must reopen without that record and take changes again,
+	         * two logs left by a compaction that never wrote its snapshot must both be replayed (and its .tmp file removed),
+	         * a corrupt log followed by another must be rejected, a log longer than the replay buffer must come back whole
+	         * up to its torn tail, and a compaction that can not create its log must not fail the change that started it
+	         */
+	        private boolean checkDurableRecovery()
+	        {
+	            int[] keys = _tree.keysToArray();
+	            String[] infos = _tree.infoToArray();
+	            if (keys.length < 2)
+	                return true;
+	            java.nio.file.Path directory = null;
+	            java.nio.file.Path other = null;
+	            try
+	            {
+	                directory = java.nio.file.Files.createTempDirectory("wavl-log");
+	                java.nio.file.Path log = directory.resolve("wal-0");
+	                WAVLTree expected = copyOf(_tree);
+	                expected.delete(keys[keys.length - 1]);
+	                for (int round = 0; round < 2; round++)
+	                {
+	                    writeDurable(directory, keys, infos, 0, keys.length);
+	                    long size = java.nio.file.Files.size(log);
+	                    if (round == 0)
+	                    {
+	                        // torn write:
+	                        try (java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(log, java.nio.file.StandardOpenOption.WRITE))
+	                        {
+	                            channel.truncate(size - 3);
+	                        }
+	                    }
+	                    else
+	                    {
+	                        // bad checksum:
+	                        byte[] bytes = java.nio.file.Files.readAllBytes(log);
+	                        bytes[bytes.length - 1] ^= 1;
+	                        java.nio.file.Files.write(log, bytes);
+	                    }
+	                    if (!sameItems(directory, expected))
+	                        return false;
+	                    int cut = String.valueOf(infos[keys.length - 1]).length() + 13;
+	                    if (java.nio.file.Files.size(log) != size - cut)
+	                        return false;
+	                    writeDurable(directory, keys, infos, keys.length - 1, keys.length);
+	                    if (!sameItems(directory, _tree))
+	                        return false;
+	                    deleteDirectory(directory);
+	                }
+
+	                // a compaction that started wal-1 but was cut short before snapshot-1 was complete:
+	                writeDurable(directory, keys, infos, 0, keys.length / 2);
+	                other = java.nio.file.Files.createTempDirectory("wavl-log");
+	                writeDurable(other, keys, infos, keys.length / 2, keys.length);
+	                java.nio.file.Files.move(other.resolve("wal-0"), directory.resolve("wal-1"));
+	                java.nio.file.Files.write(directory.resolve("snapshot-1.tmp"), new byte[] {1, 2, 3});
+	                if (!sameItems(directory, _tree) || java.nio.file.Files.exists(directory.resolve("snapshot-1.tmp"))
+	                        || !java.nio.file.Files.exists(directory.resolve("wal-1")))
+	                    return false;
+	                byte[] bytes = java.nio.file.Files.readAllBytes(log);
+	                bytes[bytes.length / 2] ^= 1;
+	                java.nio.file.Files.write(log, bytes);
+	                try
+	                {
+	                    new DurableWAVLTree(directory, DurableWAVLTree.Durability.BATCH).close();
+	                    return false;
+	                }
+	                catch (java.io.IOException e)
+	                {
+	                    // expected
+	                }
+	                deleteDirectory(directory);
+
+	                // a log longer than the buffer it is replayed through, with a value longer than that buffer, and a torn tail:
+	                String[] longInfos = new String[keys.length];
+	                WAVLTree longExpected = new WAVLTree();
+	                for (int i = 0; i < keys.length; i++)
+	                {
+	                    longInfos[i] = infos[i] + "#".repeat(i == keys.length / 2 ? 100000 : 997 * i % 4000);
+	                    if (i < keys.length - 1)
+	                        longExpected.insert(keys[i], longInfos[i]);
+	                }
+	                writeDurable(directory, keys, longInfos, 0, keys.length);
+	                try (java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(log, java.nio.file.StandardOpenOption.WRITE))
+	                {
+	                    channel.truncate(channel.size() - 3);
+	                }
+	                // twice, the second time from the truncated log:
+	                if (!sameItems(directory, longExpected) || !sameItems(directory, longExpected))
+	                    return false;
+	                deleteDirectory(directory);
+
+	                // a directory in the way of wal-1:
+	                DurableWAVLTree durable = new DurableWAVLTree(directory, DurableWAVLTree.Durability.BATCH);
+	                java.nio.file.Files.createDirectories(directory.resolve("wal-1").resolve("blocker"));
+	                durable.setCompactionThreshold(1);
+	                boolean inserted = true;
+	                try
+	                {
+	                    for (int i = 0; i < keys.length; i++)
+	                        inserted &= durable.insert(keys[i], infos[i]) >= 0;
+	                }
+	                catch (java.io.IOException e)
+	                {
+	                    inserted = false;
+	                }
+	                try
+	                {
+	                    durable.close();
+	                    return false;
+	                }
+	                catch (java.io.IOException e)
+	                {
+	                    // the compaction's failure
+	                }
+	                if (!inserted)
+	                    return false;
+	                deleteDirectory(directory.resolve("wal-1"));
+	                return sameItems(directory, _tree);
+	            }
+	            catch (java.io.IOException e)
+	            {
+	                return false;
+	            }
+	            finally
+	            {
+	                deleteDirectory(directory);
+	                deleteDirectory(other);
+	            }
+	        }
+	        /**
+	         * writers on several threads under SYNC, and a TIMED tree whose timer alone must get every change
+	         * into the log, must all reopen with the tree's items
+	         */
+	        private boolean checkDurableModes()
+	        {
+	            int[] keys = _tree.keysToArray();
+	            String[] infos = _tree.infoToArray();
+	            java.nio.file.Path directory = null;
+	            try
+	            {
+	                directory = java.nio.file.Files.createTempDirectory("wavl-log");
+	                java.util.concurrent.atomic.AtomicBoolean failed = new java.util.concurrent.atomic.AtomicBoolean();
+	                try (DurableWAVLTree durable = new DurableWAVLTree(directory, DurableWAVLTree.Durability.SYNC))
+	                {
+	                    Thread[] writers = new Thread[4];
+	                    for (int w = 0; w < writers.length; w++)
+	                    {
+	                        int first = w;
+	                        writers[w] = new Thread(() -> {
+	                            try
+	                            {
+	                                for (int i = first; i < keys.length; i += writers.length)
+	                                    if (durable.insert(keys[i], infos[i]) < 0)
+	                                        failed.set(true);
+	                            }
+	                            catch (java.io.IOException e)
+	                            {
+	                                failed.set(true);
+	                            }
+	                        });
+	                        writers[w].start();
+	                    }
+	                    for (Thread writer : writers)
+	                        writer.join();
+	                }
+	                if (failed.get() || !sameItems(directory, _tree))
+	                    return false;
+	                deleteDirectory(directory);
+
+	                long logged = 0;
+	                for (String info : infos)
+	                    logged += info.length() + 13;
+	                try (DurableWAVLTree durable = new DurableWAVLTree(directory, DurableWAVLTree.Durability.TIMED))
+	                {
+	                    durable.setSyncInterval(1);
+	                    for (int i = 0; i < keys.length; i++)
+	                        durable.insert(keys[i], infos[i]);
+	                    long deadline = System.currentTimeMillis() + 5000;
+	                    while (java.nio.file.Files.size(directory.resolve("wal-0")) != logged)
+	                    {
+	                        if (System.currentTimeMillis() > deadline)
+	                            return false;
+	                        Thread.sleep(1);
+	                    }
+	                }
+	                return sameItems(directory, _tree);
+	            }
+	            catch (java.io.IOException e)
+	            {
+	                return false;
+	            }
+	            catch (InterruptedException e)
+	            {
+	                Thread.currentThread().interrupt();
+	                return false;
+	            }
+	            finally
+	            {
+	                deleteDirectory(directory);
+	            }
+	        }
+	        /**
+	         * inserts keys[from..to) with their infos into the durable tree in directory, without compacting
+	         */
+	        private void writeDurable(java.nio.file.Path directory, int[] keys, String[] infos, int from, int to) throws java.io.IOException
+	        {
+	            try (DurableWAVLTree durable = new DurableWAVLTree(directory, DurableWAVLTree.Durability.BATCH))
+	            {
+	                for (int i = from; i < to; i++)
+	                    durable.insert(keys[i], infos[i]);
+	            }
+	        }
+	        /**
+	         * @return true if the durable tree in directory holds exactly the items of expected
+	         */
+	        private boolean sameItems(java.nio.file.Path directory, WAVLTree expected) throws java.io.IOException
+	        {
+	            try (DurableWAVLTree durable = new DurableWAVLTree(directory, DurableWAVLTree.Durability.BATCH))
+	            {
+	                return java.util.Arrays.equals(durable.keysToArray(), expected.keysToArray())
+	                        && java.util.Arrays.equals(durable.infoToArray(), expected.infoToArray());
+	            }
+	        }
+	        private void deleteDirectory(java.nio.file.Path directory)
+	        {
+	            if (directory == null)
+	                return;
+	            java.io.File[] files = directory.toFile().listFiles();
+	            if (files != null)
+	                for (java.io.File file : files)
+	                {
+	                    if (file.isDirectory())
+	                        deleteDirectory(file.toPath());
+	                    else
+	                        file.delete();
+	                }
+	            directory.toFile().delete();
+	        }
+	        /**
+	         * an off-heap copy filled in shuffled order must stay valid after every operation
+	         * and hold the tree's items, also after every value was replaced by one of another length and back,
+	         * reusing the freed value slots, and after half the items were deleted in another order and inserted again.
+	         * it must refuse to be used once closed
+	         */
+	        private boolean checkOffHeap()
+	        {
+	            int[] keys = _tree.keysToArray();
+	            String[] infos = _tree.infoToArray();
+	            ArrayList<Integer> order = new ArrayList<>();
+	            for (int i = 0; i < keys.length; i++)
+	                order.add(i);
+	            Random r = new Random();
+	            Collections.shuffle(order, r);
+	            OffHeapWAVLTree offHeap = new OffHeapWAVLTree();
+	            try
+	            {
+	                for (int i : order)
+	                {
+	                    if (offHeap.insert(keys[i], infos[i]) < 0 || offHeap.insert(keys[i], infos[i]) != -1 || !offHeap.isValid())
+	                        return false;
+	                }
+	                for (int round = 0; round < 2; round++)
+	                {
+	                    for (int i = 0; i < keys.length; i++)
+	                    {
+	                        String info = round == 0 ? infos[i].repeat(1 + Math.abs(keys[i]) % 40) : infos[i];
+	                        if (offHeap.delete(keys[i]) < 0 || !offHeap.isValid() || offHeap.insert(keys[i], info) < 0
+	                                || !offHeap.isValid() || !info.equals(offHeap.search(keys[i])))
+	                            return false;
+	                    }
+	                }
+	                Collections.shuffle(order, r);
+	                for (int i = 0; i < order.size(); i += 2)
+	                {
+	                    if (offHeap.delete(keys[order.get(i)]) < 0 || offHeap.delete(keys[order.get(i)]) != -1 || !offHeap.isValid())
+	                        return false;
+	                }
+	                if (offHeap.size() != keys.length / 2)
+	                    return false;
+	                for (int i = 0; i < order.size(); i += 2)
+	                {
+	                    if (offHeap.insert(keys[order.get(i)], infos[order.get(i)]) < 0 || !offHeap.isValid())
+	                        return false;
+	                }
+	                if (!java.util.Arrays.equals(offHeap.keysToArray(), keys) || !java.util.Arrays.equals(offHeap.infoToArray(), infos))
+	                    return false;
+	                for (int i = 0; i < keys.length; i++)
+	                    if (!infos[i].equals(offHeap.select(i + 1)) || !infos[i].equals(offHeap.search(keys[i])))
+	                        return false;
+	            }
+	            finally
+	            {
+	                offHeap.close();
+	            }
+	            offHeap.close();
+	            try
+	            {
+	                offHeap.search(0);
+	                return false;
+	            }
+	            catch (IllegalStateException e)
+	            {
+	                return true;
+	            }
+	        }
+	        private WAVLTree copyOf(WAVLTree tree)
+	        {
+	            return WAVLTree.fromSorted(tree.keysToArray(), tree.infoToArray());
+	        }
+	        private WAVLTree treeOf(java.util.TreeSet<Integer> keys)
+	        {
+	            WAVLTree tree = new WAVLTree();
+	            for (int k : keys)
+	                tree.insert(k, "other" + k);
+	            return tree;
+	        }
+	        private boolean sameKeys(WAVLTree tree, java.util.TreeSet<Integer> keys)
+	        {
+	            if (!isValid(tree) || tree.size() != keys.size())
+	                return false;
+	            int i = 0;
+	            int[] treeKeys = tree.keysToArray();
+	            for (int k : keys)
+	            {
+	                if (treeKeys[i++] != k)
+	                    return false;
+	                String info = _tree.search(k);
+	                if (info != null && !info.equals(tree.search(k)))
+	                    return false;
+	            }
+	            return true;
+	        }
+	        private boolean isValid(WAVLTree tree)
+	        {
+	            if (tree.empty())
+	                return tree.getRoot() == null && tree.size() == 0;
+	            return checkBST_rec(tree.getRoot(), Integer.MIN_VALUE, Integer.MAX_VALUE) && checkRank_rec(tree.getRoot())
+	                    && checkSubSizes_Rec(tree.getRoot()) && checkExtNodes_rec(tree.getRoot())
+	                    && tree.size() == tree.getRoot().getSubtreeSize();
+	        }
+
+	        private boolean checkNavigation()
+	        {
+	            java.util.TreeSet<Integer> keys = new java.util.TreeSet<>(_existingKeys);
+	            ArrayList<Integer> probes = new ArrayList<>(_existingKeys);
+	            for (int k : _existingKeys)
+	            {
+	                probes.add(k - 1);
+	                probes.add(k + 1);
+	            }
+	            probes.add(getNewKey());
+	            for (int k : probes)
+	            {
+	                if (!sameKey(_tree.floorNode(k), keys.floor(k)) || !sameKey(_tree.ceilingNode(k), keys.ceiling(k))
+	                        || !sameKey(_tree.lowerNode(k), keys.lower(k)) || !sameKey(_tree.higherNode(k), keys.higher(k)))
+	                    return false;
+	                if (!java.util.Objects.equals(_tree.floorKey(k), keys.floor(k)) || !java.util.Objects.equals(_tree.ceilingKey(k), keys.ceiling(k))
+	                        || !java.util.Objects.equals(_tree.lowerKey(k), keys.lower(k)) || !java.util.Objects.equals(_tree.higherKey(k), keys.higher(k)))
+	                    return false;
+	            }
+	            return true;
+	        }
+	        private boolean sameKey(WAVLTree.WAVLNode node, Integer key)
+	        {
+	            if (node == null || key == null)
+	                return node == null && key == null;
+	            return node.getKey() == key;
+	        }
+
+	        private boolean checkIterators()
+	        {
+	            Collections.sort(_existingKeys);
+	            int i = 0;
+	            for (WAVLTree.WAVLNode node : _tree)
+	            {
+	                if (i >= _existingKeys.size() || node.getKey() != _existingKeys.get(i) || !node.getValue().equals("" + node.getKey()))
+	                    return false;
+	                i++;
+	            }
+	            if (i != _existingKeys.size())
+	                return false;
+
+	            java.util.Iterator<WAVLTree.WAVLNode> descending = _tree.descendingIterator();
+	            for (i = _existingKeys.size() - 1; i >= 0; i--)
+	                if (!descending.hasNext() || descending.next().getKey() != _existingKeys.get(i))
+	                    return false;
+	            if (descending.hasNext())
+	                return false;
+
+	            if (_existingKeys.isEmpty())
+	                return !_tree.range(Integer.MIN_VALUE, Integer.MAX_VALUE).hasNext();
+	            int lo = _existingKeys.get(_existingKeys.size() / 3) - 1;
+	            int hi = _existingKeys.get(2 * _existingKeys.size() / 3) + 1;
+	            java.util.Iterator<WAVLTree.WAVLNode> range = _tree.range(lo, hi);
+	            for (int k : _existingKeys)
+	                if (k >= lo && k <= hi && (!range.hasNext() || range.next().getKey() != k))
+	                    return false;
+	            return !range.hasNext();
+	        }
+
+	        /**
+	         * a tree bulk loaded from the tree's own items must be a valid, equal WAVL tree
+	         */
+	        private boolean checkFromSorted()
+	        {
+	            WAVLTree loaded = WAVLTree.fromSorted(_tree.keysToArray(), _tree.infoToArray());
+	            if (loaded.size() != _tree.size() || loaded.empty() != _tree.empty())
+	                return false;
+	            if (!java.util.Arrays.equals(loaded.keysToArray(), _tree.keysToArray())
+	                    || !java.util.Arrays.equals(loaded.infoToArray(), _tree.infoToArray()))
+	                return false;
+	            for (int i = 1; i <= _tree.size(); i++)
+	                if (!loaded.selectKey(i).equals(_tree.selectKey(i)))
+	                    return false;
+	            return isValid(loaded);
+	        }
+
+	        /**
+	         * the array engine must agree with WAVLTree on every operation's result and content,
+	         * and keep the same BST, rank and subtree size invariants
+	         */
+	        private boolean checkIntTree()
+	        {
+	            if (_lastIntResult != _lastResult || _intTree.size() != _tree.size() || _intTree.empty() != _tree.empty())
+	                return false;
+	            if (!java.util.Arrays.equals(_intTree.keysToArray(), _tree.keysToArray()))
+	                return false;
+	            if (!java.util.Arrays.equals(_intTree.infoToArray(String[]::new), _tree.infoToArray()))
+	                return false;
+	            for (int i = 0; i < _existingKeys.size(); i++)
+	            {
+	                int k = _existingKeys.get(i);
+	                if (!("" + k).equals(_intTree.search(k)) || _intTree.selectKey(i + 1) != _tree.selectKey(i + 1)
+	                        || _intTree.rank(k) != _tree.rank(k))
+	                    return false;
+	            }
+	            if (_intTree.search(getNewKey()) != null)
+	                return false;
+	            if (!_tree.empty() && (!_intTree.min().equals(_tree.min()) || !_intTree.max().equals(_tree.max())
+	                    || _intTree.minKey() != _tree.selectKey(1)))
+	                return false;
+	            if (!throwsNoSuchElement(() -> _intTree.selectKey(_intTree.size() + 1)) || !throwsNoSuchElement(() -> _intTree.selectKey(0))
+	                    || (_intTree.empty() && !throwsNoSuchElement(() -> _intTree.minKey())))
+	                return false;
+	            return checkArrayTree_rec(_intTree, _intTree::getKey, _intTree.getRoot(), Long.MIN_VALUE, Long.MAX_VALUE) == _intTree.size();
+	        }
+
+	        /**
+	         * the long keyed twin must agree with WAVLTree the same way, on keys outside the int range
+	         */
+	        private boolean checkLongTree()
+	        {
+	            if (_lastLongResult != _lastResult || _longTree.size() != _tree.size() || _longTree.empty() != _tree.empty())
+	                return false;
+	            int[] keys = _tree.keysToArray();
+	            long[] longKeys = _longTree.keysToArray();
+	            if (longKeys.length != keys.length || !java.util.Arrays.equals(_longTree.infoToArray(String[]::new), _tree.infoToArray()))
+	                return false;
+	            for (int i = 0; i < keys.length; i++)
+	            {
+	                long k = longKey(keys[i]);
+	                if (longKeys[i] != k || !("" + keys[i]).equals(_longTree.search(k)) || _longTree.selectKey(i + 1) != k
+	                        || _longTree.rank(k) != i || _longTree.rank(k + 1) != i + 1 || _longTree.countInRange(k, k) != 1)
+	                    return false;
+	            }
+	            if (_longTree.search(longKey(getNewKey())) != null)
+	                return false;
+	            if (!_tree.empty() && (!_longTree.min().equals(_tree.min()) || !_longTree.max().equals(_tree.max())
+	                    || _longTree.minKey() != longKeys[0]))
+	                return false;
+	            if (!throwsNoSuchElement(() -> _longTree.selectKey(_longTree.size() + 1)) || !throwsNoSuchElement(() -> _longTree.selectKey(0))
+	                    || (_longTree.empty() && !throwsNoSuchElement(() -> _longTree.minKey())))
+	                return false;
+	            return checkArrayTree_rec(_longTree, _longTree::getKey, _longTree.getRoot(), Long.MIN_VALUE, Long.MAX_VALUE) == _longTree.size();
+	        }
+	        private boolean throwsNoSuchElement(Runnable query)
+	        {
+	            try
+	            {
+	                query.run();
+	                return false;
+	            }
+	            catch (java.util.NoSuchElementException e)
+	            {
+	                return true;
+	            }
+	        }
+	        private int checkArrayTree_rec(ArrayWAVLTree<String> tree, java.util.function.IntToLongFunction keyOf, int node, long min, long max)
+	        {
+	            if (!tree.isInnerNode(node))
+	                return tree.getRank(node) == -1 ? 0 : -1;
+	            long key = keyOf.applyAsLong(node);
+	            int leftDiff = tree.getRank(node) - tree.getRank(tree.getLeft(node));
+	            int rightDiff = tree.getRank(node) - tree.getRank(tree.getRight(node));
+	            if (key < min || key > max || leftDiff < 1 || leftDiff > 2 || rightDiff < 1 || rightDiff > 2)
+	                return -1;
+	            if ((tree.isInnerNode(tree.getLeft(node)) && tree.getParent(tree.getLeft(node)) != node)
+	                    || (tree.isInnerNode(tree.getRight(node)) && tree.getParent(tree.getRight(node)) != node))
+	                return -1;
+	            int leftCount = checkArrayTree_rec(tree, keyOf, tree.getLeft(node), min, key - 1);
+	            int rightCount = checkArrayTree_rec(tree, keyOf, tree.getRight(node), key + 1, max);
+	            if (leftCount < 0 || rightCount < 0 || tree.getSubtreeSize(node) != leftCount + rightCount + 1)
+	                return -1;
+	            return leftCount + rightCount + 1;
+	        }
+
+	        /**
+	         * the generic tree over Long keys must agree with WAVLTree the same way
+	         */
+	        private boolean checkGenericTree()
+	        {
+	            if (_lastGenericResult != _lastResult || _genericTree.size() != _tree.size() || _genericTree.empty() != _tree.empty())
+	                return false;
+	            int[] keys = _tree.keysToArray();
+	            Long[] genericKeys = _genericTree.keysToArray(Long[]::new);
+	            if (genericKeys.length != keys.length || !java.util.Arrays.equals(_genericTree.infoToArray(String[]::new), _tree.infoToArray()))
+	                return false;
+	            for (int i = 0; i < keys.length; i++)
+	            {
+	                Long k = longKey(keys[i]);
+	                if (!genericKeys[i].equals(k) || !("" + keys[i]).equals(_genericTree.search(k)) || !k.equals(_genericTree.selectKey(i + 1))
+	                        || _genericTree.rank(k) != i)
+	                    return false;
+	            }
+	            if (_genericTree.search(longKey(getNewKey())) != null || _genericTree.selectKey(keys.length + 1) != null)
+	                return false;
+	            if (!_tree.empty() && (!_genericTree.min().equals(_tree.min()) || !_genericTree.max().equals(_tree.max())
+	                    || !genericKeys[0].equals(_genericTree.minKey())))
+	                return false;
+	            return checkGenericTree_rec(_genericTree.getRoot(), Long.MIN_VALUE, Long.MAX_VALUE) == _genericTree.size();
+	        }
+	        private int checkGenericTree_rec(GenericWAVLTree.Node<Long, String> node, long min, long max)
+	        {
+	            if (!node.isInnerNode())
+	                return node.getRank() == -1 && node.getSubtreeSize() == 0 ? 0 : -1;
+	            long key = node.getKey();
+	            int leftDiff = node.getRank() - node.getLeft().getRank();
+	            int rightDiff = node.getRank() - node.getRight().getRank();
+	            if (key < min || key > max || leftDiff < 1 || leftDiff > 2 || rightDiff < 1 || rightDiff > 2)
+	                return -1;
+	            int leftCount = checkGenericTree_rec(node.getLeft(), min, key - 1);
+	            int rightCount = checkGenericTree_rec(node.getRight(), key + 1, max);
+	            if (leftCount < 0 || rightCount < 0 || node.getSubtreeSize() != leftCount + rightCount + 1)
+	                return -1;
+	            return leftCount + rightCount + 1;
+	        }
+
 	        private void PrepareStr(Error_Code code)
 	        {
 	            str = "Result: " + code + ", Operations: ";
@@ -565,7 +1837,32 @@ public class Test{
 	        Bad_Keys_to_Array,
 	        Bad_Info_to_Array,
 	        Bad_Size,
-	        Bad_Select
+	        Bad_Select,
+	        Bad_Rank,
+	        Bad_Int_Tree,
+	        Bad_Long_Tree,
+	        Bad_Generic_Tree,
+	        Bad_From_Sorted,
+	        Bad_Iterator,
+	        Bad_Navigation,
+	        Bad_Split_Join,
+	        Bad_Set_Operations,
+	        Bad_Concurrent,
+	        Bad_Persistent,
+	        Bad_Batch,
+	        Bad_Finger,
+	        Bad_Aggregate,
+	        Bad_Interval,
+	        Bad_Stream,
+	        Bad_Delete_Range,
+	        Bad_Node_Pool,
+	        Bad_Frozen,
+	        Bad_Bucketed,
+	        Bad_Snapshot,
+	        Bad_Durable,
+	        Bad_Durable_Recovery,
+	        Bad_Durable_Modes,
+	        Bad_Off_Heap
 	    }
 
 	    public class Operation
@@ -1,3 +1,17 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 
 /**
@@ -9,18 +23,39 @@
  *
  */
 
-public class WAVLTree {
+public class WAVLTree implements Iterable<WAVLTree.WAVLNode> {
+	/**
+	 * the single external leaf shared by every tree:
+	 * rank -1, subTreeSize 0, no children and no parent
+	 */
+	private static final WAVLNode EXTERNAL = new WAVLNode((WAVLNode) null);
+
 	private WAVLNode root;
 	private int size;
-	private int tempIndex;
+	private WAVLNode first; // the node with the smallest key, null if not known
+	private WAVLNode last; // the node with the largest key, null if not known
+	private WAVLAugmentation<Object> augmentation;
+	private WAVLNode pool;
+	private int poolSize;
+	private int poolCapacity;
 	
 	/**
 	 * empty constructor  sets default values
 	 */
   public WAVLTree() {
-	  this.root = new WAVLNode(null);
+	  this.root = EXTERNAL;
 	  this.size = 0;
-	  this.tempIndex = 0;
+  }
+
+  /**
+   * constructor
+   * creates an empty tree that keeps augmentation's aggregate on every node, see {@link #aggregate(int, int)}
+   * @param augmentation  the monoid to keep
+   */
+  @SuppressWarnings("unchecked")
+  public WAVLTree(WAVLAugmentation<?> augmentation) {
+	  this();
+	  this.augmentation = (WAVLAugmentation<Object>) augmentation;
   }
   /**
    * constructor
@@ -31,7 +66,466 @@ public class WAVLTree {
   public WAVLTree(int key, String value) {
 	  this.root = new WAVLNode(key,value);
 	  this.size = 1;
-	  this.tempIndex = 0;
+  }
+
+  /**
+   * public static WAVLTree fromSorted(int[] keys, String[] values)
+   *
+   * builds a tree holding keys[i] with values[i] for every i, in O(n),
+   * without any insert or rebalancing.
+   * @param keys  strictly increasing keys
+   * @param values  values[i] is the value of keys[i]
+   * @return a valid WAVL tree with the given items
+   * @throws IllegalArgumentException if the lengths differ or keys are not strictly increasing
+   */
+  public static WAVLTree fromSorted(int[] keys, String[] values) {
+	  if(keys.length != values.length) {
+		  throw new IllegalArgumentException("got " + keys.length + " keys and " + values.length + " values");
+	  }
+	  return fromSorted(Arrays.stream(keys).iterator(), Arrays.asList(values).iterator(), keys.length);
+  }
+
+  /**
+   * public static WAVLTree fromSorted(PrimitiveIterator.OfInt keys, Iterator<String> values, int n)
+   *
+   * builds a tree from the first n items of two parallel streams, in O(n).
+   * every node's rank is its height, which keeps all rank differences 1 or 2
+   * since the two halves of each subtree differ in size by at most one.
+   * @param keys  strictly increasing keys
+   * @param values  the i'th value belongs to the i'th key
+   * @param n  number of items to take
+   * @return a valid WAVL tree with the given items
+   * @throws IllegalArgumentException if keys are not strictly increasing
+   * @throws NoSuchElementException if a stream holds less than n items
+   */
+  public static WAVLTree fromSorted(PrimitiveIterator.OfInt keys, Iterator<String> values, int n) {
+	  WAVLTree tree = new WAVLTree();
+	  tree.root = new SortedBuilder(keys, values).build(n);
+	  tree.size = n;
+	  return tree;
+  }
+
+  /**
+   * called by {@link #fromSorted(PrimitiveIterator.OfInt, Iterator, int)}
+   * consumes the streams in order while building subtrees bottom up
+   */
+  private static class SortedBuilder {
+	  private final PrimitiveIterator.OfInt keys;
+	  private final Iterator<String> values;
+	  private boolean hasLast;
+	  private int lastKey;
+
+	  private SortedBuilder(PrimitiveIterator.OfInt keys, Iterator<String> values) {
+		  this.keys = keys;
+		  this.values = values;
+		  this.hasLast = false;
+	  }
+
+	  /**
+	   * builds a subtree of the next n items, left half first
+	   * @param n  number of items in the subtree
+	   * @return subtree root (with no parent yet), the external leaf if n == 0
+	   */
+	  private WAVLNode build(int n) {
+		  if(n == 0) {
+			  return EXTERNAL;
+		  }
+		  int leftSize = (n - 1) / 2;
+		  WAVLNode left = build(leftSize);
+
+		  int key = keys.nextInt();
+		  if(hasLast && key <= lastKey) {
+			  throw new IllegalArgumentException("keys are not strictly increasing at " + key);
+		  }
+		  hasLast = true;
+		  lastKey = key;
+		  WAVLNode node = new WAVLNode(key, values.next());
+
+		  WAVLNode right = build(n - 1 - leftSize);
+		  node.setLeft(left);
+		  left.setParent(node);
+		  node.setRight(right);
+		  right.setParent(node);
+		  node.updateRank();
+		  node.calculateSubTreeSize();
+		  return node;
+	  }
+  }
+
+  /**
+   * public static WAVLTree join(WAVLTree left, int key, String value, WAVLTree right)
+   *
+   * joins two trees and a middle item into one tree, in O(|rank(left) - rank(right)| + 1)
+   * rotations and O(log n) time. left and right are emptied.
+   * @param left  tree whose keys are all smaller than key
+   * @param right  tree whose keys are all bigger than key
+   * @return a valid WAVL tree holding all items of left, (key,value) and all items of right
+   * @throws IllegalArgumentException if the keys of left, key and the keys of right are not in order
+   */
+  public static WAVLTree join(WAVLTree left, int key, String value, WAVLTree right) {
+	  if((!left.empty() && left.lastNode().getKey() >= key) || (!right.empty() && right.firstNode().getKey() <= key)) {
+		  throw new IllegalArgumentException("left keys < " + key + " < right keys does not hold");
+	  }
+	  WAVLTree tree = new WAVLTree();
+	  tree.augmentation = left.augmentation != null ? left.augmentation : right.augmentation;
+	  tree.join(left.root, tree.newNode(key, value), right.root);
+	  left.root = EXTERNAL;
+	  left.size = 0;
+	  right.root = EXTERNAL;
+	  right.size = 0;
+	  return tree;
+  }
+
+  /**
+   * public WAVLTree[] split(int k)
+   *
+   * splits the tree around k in O(log n). this tree is emptied.
+   * @return two trees, [0] holding all items with keys < k and [1] holding all items with keys >= k
+   */
+  public WAVLTree[] split(int k) {
+	  WAVLTree less = new WAVLTree();
+	  WAVLTree greater = new WAVLTree();
+	  less.augmentation = this.augmentation;
+	  greater.augmentation = this.augmentation;
+	  WAVLNode found = split(this.root, k, less, greater);
+	  if(found != null) {
+		  greater.join(EXTERNAL, found, greater.root);
+	  }
+	  this.root = EXTERNAL;
+	  this.size = 0;
+	  forgetEnds();
+	  return new WAVLTree[] {less, greater};
+  }
+
+  /**
+   * called by {@link #split(int)}
+   * splits the subtree of n into less (keys < k) and greater (keys > k), walking down the search path of k
+   * and joining the subtrees hanging off it on the way back up.
+   * less and greater must be empty.
+   * @return the detached node with key k, null if there is none
+   */
+  private static WAVLNode split(WAVLNode n, int k, WAVLTree less, WAVLTree greater) {
+	  if(!n.isInnerNode()) {
+		  return null;
+	  }
+	  WAVLNode nLeft = n.getLeft();
+	  WAVLNode nRight = n.getRight();
+	  nLeft.setParent(null);
+	  nRight.setParent(null);
+	  if(k == n.getKey()) {
+		  less.setRoot(nLeft);
+		  greater.setRoot(nRight);
+		  return n;
+	  }
+	  WAVLNode found;
+	  if(k < n.getKey()) {
+		  found = split(nLeft, k, less, greater);
+		  greater.join(greater.root, n, nRight);
+	  } else {
+		  found = split(nRight, k, less, greater);
+		  less.join(nLeft, n, less.root);
+	  }
+	  return found;
+  }
+
+  /**
+   * makes the subtree of n, which has no parent, this tree's content
+   */
+  private void setRoot(WAVLNode n) {
+	  this.root = n;
+	  this.size = n.getSubtreeSize();
+	  forgetEnds();
+  }
+
+  /**
+   * drops the cached {@link #first} and {@link #last} nodes, after the tree was rebuilt
+   */
+  private void forgetEnds() {
+	  this.first = null;
+	  this.last = null;
+  }
+
+  /**
+   * makes this tree the concatenation of the subtrees l and r (all keys of l smaller than all keys of r),
+   * using r's minimal node as the middle node of {@link #join(WAVLNode, WAVLNode, WAVLNode)}
+   */
+  private void join(WAVLNode l, WAVLNode r) {
+	  if(!r.isInnerNode()) {
+		  setRoot(l);
+		  return;
+	  }
+	  WAVLTree rest = new WAVLTree();
+	  rest.setRoot(r);
+	  WAVLNode middle = rest.firstNode();
+	  rest.delete(middle.getKey());
+	  join(l, middle, rest.root);
+  }
+
+  /**
+   * public int deleteRange(int lo, int hi)
+   *
+   * deletes all items with keys lo <= k <= hi by splitting them off as whole subtrees
+   * and joining what is left, O(log n) no matter how many items are deleted.
+   * @return the number of items deleted
+   */
+  public int deleteRange(int lo, int hi) {
+	  if(lo > hi || empty()) {
+		  return 0;
+	  }
+	  int before = this.size;
+	  WAVLTree less = new WAVLTree();
+	  WAVLTree rest = new WAVLTree();
+	  split(this.root, lo, less, rest);
+	  WAVLTree middle = new WAVLTree();
+	  WAVLTree greater = new WAVLTree();
+	  split(rest.root, hi, middle, greater);
+	  join(less.root, greater.root);
+	  return before - this.size;
+  }
+
+  /**
+   * public WAVLTree pollFirst(int n)
+   *
+   * removes the n items with the smallest keys (all of them if n >= size()), O(log n)
+   * @return a tree holding the removed items
+   */
+  public WAVLTree pollFirst(int n) {
+	  if(n >= this.size || n <= 0) {
+		  return pollAll(n > 0);
+	  }
+	  return pollBelow(selectNode(n + 1).getKey(), true);
+  }
+
+  /**
+   * public WAVLTree pollLast(int n)
+   *
+   * removes the n items with the largest keys (all of them if n >= size()), O(log n)
+   * @return a tree holding the removed items
+   */
+  public WAVLTree pollLast(int n) {
+	  if(n >= this.size || n <= 0) {
+		  return pollAll(n > 0);
+	  }
+	  return pollBelow(selectNode(this.size - n + 1).getKey(), false);
+  }
+
+  /**
+   * called by {@link #pollFirst(int)} and {@link #pollLast(int)}
+   * splits this tree at k, keeping one side and returning the other
+   * @param first  true to return the keys < k, false to return the keys >= k
+   */
+  private WAVLTree pollBelow(int k, boolean first) {
+	  WAVLTree[] parts = split(k);
+	  WAVLTree kept = parts[first ? 1 : 0];
+	  setRoot(kept.root);
+	  kept.root = EXTERNAL;
+	  kept.size = 0;
+	  return parts[first ? 0 : 1];
+  }
+
+  /**
+   * @param all  true to move all of this tree's items to the returned tree, false to move none
+   */
+  private WAVLTree pollAll(boolean all) {
+	  WAVLTree polled = new WAVLTree();
+	  polled.augmentation = this.augmentation;
+	  if(all) {
+		  polled.setRoot(this.root);
+		  this.root = EXTERNAL;
+		  this.size = 0;
+		  forgetEnds();
+	  }
+	  return polled;
+  }
+
+  /**
+   * public static WAVLTree union(WAVLTree a, WAVLTree b)
+   *
+   * @return a tree holding the items of both trees, taking a's value for keys found in both.
+   * runs as a fork/join divide and conquer over split and join,
+   * O(m log(n/m + 1)) work for trees of sizes m <= n. a and b are emptied.
+   */
+  public static WAVLTree union(WAVLTree a, WAVLTree b) {
+	  return runSetOperation(SetOperation.Kind.UNION, a, b);
+  }
+
+  /**
+   * public static WAVLTree intersection(WAVLTree a, WAVLTree b)
+   *
+   * @return a tree holding a's items whose keys are also in b.
+   * same bounds as {@link #union(WAVLTree, WAVLTree)}. a and b are emptied.
+   */
+  public static WAVLTree intersection(WAVLTree a, WAVLTree b) {
+	  return runSetOperation(SetOperation.Kind.INTERSECTION, a, b);
+  }
+
+  /**
+   * public static WAVLTree difference(WAVLTree a, WAVLTree b)
+   *
+   * @return a tree holding a's items whose keys are not in b.
+   * same bounds as {@link #union(WAVLTree, WAVLTree)}. a and b are emptied.
+   */
+  public static WAVLTree difference(WAVLTree a, WAVLTree b) {
+	  return runSetOperation(SetOperation.Kind.DIFFERENCE, a, b);
+  }
+
+  /**
+   * called by {@link #union}, {@link #intersection} and {@link #difference}
+   */
+  private static WAVLTree runSetOperation(SetOperation.Kind operation, WAVLTree a, WAVLTree b) {
+	  if(a == b) {
+		  throw new IllegalArgumentException("a and b must be different trees");
+	  }
+	  WAVLTree tree = new WAVLTree();
+	  tree.augmentation = a.augmentation;
+	  tree.setRoot(ForkJoinPool.commonPool().invoke(new SetOperation(operation, a.root, b.root)));
+	  a.root = EXTERNAL;
+	  a.size = 0;
+	  b.root = EXTERNAL;
+	  b.size = 0;
+	  return tree;
+  }
+
+  /**
+   * one step of a set operation on two parentless subtrees:
+   * exposes one root, splits the other subtree by its key,
+   * solves both sides (in parallel above {@link #SEQUENTIAL_SIZE} items) and joins the results.
+   * each task owns its subtrees, the only node they share is the read only external leaf.
+   */
+  private static class SetOperation extends RecursiveTask<WAVLNode> {
+	  private static final long serialVersionUID = 1L;
+	  private static final int SEQUENTIAL_SIZE = 1 << 12;
+
+	  /**
+	   * which set operation a task computes
+	   */
+	  private enum Kind {
+		  /** keys of either tree */
+		  UNION,
+		  /** keys of both trees */
+		  INTERSECTION,
+		  /** keys of the first tree only */
+		  DIFFERENCE
+	  }
+
+	  private final Kind operation;
+	  private final WAVLNode a;
+	  private final WAVLNode b;
+
+	  private SetOperation(Kind operation, WAVLNode a, WAVLNode b) {
+		  this.operation = operation;
+		  this.a = a;
+		  this.b = b;
+	  }
+
+	  @Override
+	  protected WAVLNode compute() {
+		  if(!a.isInnerNode()) {
+			  return operation == Kind.UNION ? b : EXTERNAL;
+		  }
+		  if(!b.isInnerNode()) {
+			  return operation == Kind.INTERSECTION ? EXTERNAL : a;
+		  }
+
+		  // Difference keeps a's items, so it exposes b's root and splits a:
+		  WAVLNode exposed = operation == Kind.DIFFERENCE ? b : a;
+		  WAVLNode other = operation == Kind.DIFFERENCE ? a : b;
+		  WAVLNode exposedLeft = exposed.getLeft();
+		  WAVLNode exposedRight = exposed.getRight();
+		  exposedLeft.setParent(null);
+		  exposedRight.setParent(null);
+		  WAVLTree less = new WAVLTree();
+		  WAVLTree greater = new WAVLTree();
+		  boolean found = split(other, exposed.getKey(), less, greater) != null;
+
+		  SetOperation leftTask;
+		  SetOperation rightTask;
+		  if(operation == Kind.DIFFERENCE) {
+			  leftTask = new SetOperation(operation, less.root, exposedLeft);
+			  rightTask = new SetOperation(operation, greater.root, exposedRight);
+		  } else {
+			  leftTask = new SetOperation(operation, exposedLeft, less.root);
+			  rightTask = new SetOperation(operation, exposedRight, greater.root);
+		  }
+		  WAVLNode left;
+		  WAVLNode right;
+		  if(a.getSubtreeSize() + b.getSubtreeSize() < SEQUENTIAL_SIZE) {
+			  left = leftTask.compute();
+			  right = rightTask.compute();
+		  } else {
+			  leftTask.fork();
+			  right = rightTask.compute();
+			  left = leftTask.join();
+		  }
+
+		  WAVLTree result = new WAVLTree();
+		  if(operation == Kind.UNION || (operation == Kind.INTERSECTION && found)) {
+			  result.join(left, exposed, right);
+		  } else {
+			  result.join(left, right);
+		  }
+		  return result.root;
+	  }
+  }
+
+  /**
+   * makes this tree the join of the subtrees l and r around the node x.
+   * x is hung where the taller subtree's spine reaches the rank of the shorter one,
+   * with rank one above the node it replaces there, so at most its new parent
+   * is left with a 0 rank difference, which is fixed like after an insert.
+   * @param l  root of a subtree whose keys are smaller than x's, with no parent
+   * @param x  the middle node, its links are overwritten
+   * @param r  root of a subtree whose keys are bigger than x's, with no parent
+   */
+  private void join(WAVLNode l, WAVLNode x, WAVLNode r) {
+	  int lRank = l.getRank();
+	  int rRank = r.getRank();
+	  if(Math.abs(lRank - rRank) <= 1) {
+		  x.setLeft(l);
+		  x.setRight(r);
+		  l.setParent(x);
+		  r.setParent(x);
+		  x.setParent(null);
+		  x.updateRank();
+		  x.calculateSubTreeSize();
+		  this.root = x;
+		  this.size = x.getSubtreeSize();
+		  forgetEnds();
+		  return;
+	  }
+
+	  forgetEnds();
+	  WAVLNode p = null;
+	  WAVLNode c;
+	  if(lRank > rRank) {
+		  this.root = l;
+		  c = l;
+		  while(c.getRank() > rRank + 1) {
+			  p = c;
+			  c = c.getRight();
+		  }
+		  x.setLeft(c);
+		  x.setRight(r);
+		  p.setRight(x);
+	  } else {
+		  this.root = r;
+		  c = r;
+		  while(c.getRank() > lRank + 1) {
+			  p = c;
+			  c = c.getLeft();
+		  }
+		  x.setLeft(l);
+		  x.setRight(c);
+		  p.setLeft(x);
+	  }
+	  x.getLeft().setParent(x);
+	  x.getRight().setParent(x);
+	  x.setParent(p);
+	  x.setRank(c.getRank() + 1);
+	  x.calculateSubTreeSize();
+	  p.updateSubTreeSizes(x.getSubtreeSize() - c.getSubtreeSize());
+	  reBalanceFrom(p, false);
+	  this.size = this.root.getSubtreeSize();
   }
   
   /**
@@ -55,33 +549,34 @@ public class WAVLTree {
   
   /**
    * searches for a node with key k
-   * updates size of curr by toUpdate
+   * updates size of the nodes on the path by toUpdate
    * @param k
    * @param curr
    * @param toUpdate -1 if delete, 1 if insert, 0 if only search without changing the tree
-   * @return null if not found, node with key = k, if found
+   * @return the external leaf if not found, node with key = k, if found
    */
   public WAVLNode search(int k,WAVLNode curr, int toUpdate) {
-	  if(curr.getKey()==k) {
-		  if(toUpdate<0) {
-			  curr.updateSubTreeSizes(toUpdate);
+	  WAVLNode last = null;
+	  while(curr.isInnerNode()) {
+		  if(curr.getKey()==k) {
+			  if(toUpdate<0) {
+				  curr.updateSubTreeSizes(toUpdate);
+			  }
+			  return curr;
 		  }
-		  return curr;		  
-	  }
-	  else if(curr.getKey() == -1) {
-		  if (toUpdate>0) {
-			  curr.updateSubTreeSizes(toUpdate);
+		  last = curr;
+		  if(curr.getKey()<k) {
+			  curr = curr.getRight();
+		  } 
+		  else {
+			  curr = curr.getLeft();
 		  }
-		  return curr;
 	  }
-	  
-	  else if(curr.getKey()<k) {	
-		  
-		  return search(k,curr.getRight(), toUpdate);
-	  } 
-	  else {
-		  return search(k,curr.getLeft(), toUpdate);
-	  }	  
+	  // The external leaf is shared, so sizes are updated from the last inner node:
+	  if (toUpdate>0 && last != null) {
+		  last.updateSubTreeSizes(toUpdate);
+	  }
+	  return curr;
   }
     
   /**
@@ -93,22 +588,210 @@ public class WAVLTree {
    * returns -1 if an item with key k already exists in the tree.
    */
    public int insert(int k, String i) {
-	   	  WAVLNode location = search(k, this.root, 1);   
-	   	  
-	   	  // If item with k already exists:
-	   	  if (location.getKey() != -1) {
-	   		  return -1;
+	   	  WAVLNode parent = null;
+	   	  WAVLNode curr = this.root;
+	   	  while(curr.isInnerNode()) {
+	   		  // If item with k already exists:
+	   		  if(curr.getKey()==k) {
+	   			  return -1;
+	   		  }
+	   		  parent = curr;
+	   		  curr = curr.getKey()<k ? curr.getRight() : curr.getLeft();
+	   	  }
+	   	  return insertAt(parent, newNode(k,i));
+   }
+
+   /**
+    * @return a new node for (k, i), keeping this tree's augmentation if it has one
+    */
+   private WAVLNode newNode(int k, String i) {
+	   WAVLNode node;
+	   if(this.pool != null) {
+		   node = this.pool;
+		   this.pool = node.parent;
+		   this.poolSize--;
+		   node.reset(k, i);
+	   } else {
+		   node = new WAVLNode(k, i);
+	   }
+	   if(this.augmentation != null) {
+		   node.augmentation = this.augmentation;
+		   node.calculateAggregate();
+	   }
+	   return node;
+   }
+
+   /**
+    * hangs location as a child of parent (as the root if parent is null) and rebalances
+    * @return number of rebalance steps
+    */
+   private int insertAt(WAVLNode parent, WAVLNode location) {
+	   	  location.setParent(parent);
+	   	  if(parent == null) {
+	   		  this.root = location;
+	   		  this.first = location;
+	   		  this.last = location;
+	   	  } else {
+	   		  if(location.getKey()<parent.getKey()) {
+	   			  parent.setLeft(location);
+	   			  if(parent == this.first) {
+	   				  this.first = location;
+	   			  }
+	   		  } else {
+	   			  parent.setRight(location);
+	   			  if(parent == this.last) {
+	   				  this.last = location;
+	   			  }
+	   		  }
+	   		  parent.updateSubTreeSizes(1);
 	   	  }
-	   	  
-	   	  location.setKey(k);
-	   	  location.setValue(i); 	  
-	   	  location.setRight(new WAVLNode(location));
-	   	  location.setLeft(new WAVLNode(location));
-	   	  location.setRank(0);
 	   	  this.size ++;
-	   	  int cnt = reBalance(location,false);
-	   	  location.calculateSubTreeSize();
-	   	  return cnt;
+	   	  return reBalance(location,false);
+   }
+
+   /**
+    * public int insertAll(int[] keys, String[] values)
+    *
+    * inserts the items (keys[j], values[j]) in key order, starting each search from the previous
+    * item's node instead of the root (see {@link #searchNear(WAVLNode, int)}), so neighbouring keys share most of their descent.
+    * keys already in the tree (or earlier in the batch) are skipped.
+    * @return the total number of rebalancing operations
+    */
+   public int insertAll(int[] keys, String[] values) {
+	   if(keys.length != values.length) {
+		   throw new IllegalArgumentException("keys and values must have the same length");
+	   }
+	   long[] order = new long[keys.length];
+	   for(int j = 0; j < keys.length; j++) {
+		   order[j] = ((long) keys[j] << 32) | j;
+	   }
+	   Arrays.sort(order);
+	   int counter = 0;
+	   WAVLNode finger = null;
+	   for(long entry : order) {
+		   int k = (int) (entry >> 32);
+		   WAVLNode node = descendFrom(finger, k);
+		   if(node != null && node.getKey() == k) {
+			   finger = node;
+			   continue;
+		   }
+		   finger = newNode(k, values[(int) entry]);
+		   counter += insertAt(node, finger);
+	   }
+	   return counter;
+   }
+
+   /**
+    * public int deleteAll(int[] keys)
+    *
+    * deletes the items with the given keys in key order, starting each search from the
+    * deleted item's successor instead of the root (see {@link #searchNear(WAVLNode, int)}). keys not in the tree are skipped.
+    * @return the total number of rebalancing operations
+    */
+   public int deleteAll(int[] keys) {
+	   int[] sorted = Arrays.copyOf(keys, keys.length);
+	   Arrays.sort(sorted);
+	   int counter = 0;
+	   WAVLNode finger = null;
+	   for(int k : sorted) {
+		   WAVLNode node = descendFrom(finger, k);
+		   if(node == null || node.getKey() != k) {
+			   finger = node;
+			   continue;
+		   }
+		   finger = node.successor();
+		   counter += deleteNode(node);
+	   }
+	   return counter;
+   }
+
+   /**
+    * public WAVLNode searchNear(WAVLNode finger, int k)
+    *
+    * searches for k starting from finger, a node of this tree (or null to start from the root).
+    * it climbs from finger to the lowest ancestor whose subtree spans k and descends from there:
+    * O(log d) for d items between finger's key and k, plus the height of the largest subtree that finger ends
+    * on k's side (its climb to the next larger key, for k above it). that height is O(1) on average over
+    * the nodes of a tree, so a walk in key order costs O(1) amortized per step,
+    * and from the smallest or largest node outward it is O(1) once that node is known
+
+    * @return the node with key k, null if there is none
+    */
+   public WAVLNode searchNear(WAVLNode finger, int k) {
+	   WAVLNode node = descendFrom(finger, k);
+	   return node != null && node.getKey() == k ? node : null;
+   }
+
+   /**
+    * public WAVLNode insertNear(WAVLNode finger, int k, String i)
+    *
+    * inserts an item with key k and info i, searching for its place from finger,
+    * a node of this tree (or null to start from the root), as in {@link #searchNear(WAVLNode, int)}.
+    * only the search is shortened: linking the node still updates the subtree sizes up to the root, O(log n).
+    * @return the node holding k - the new one, or the one already in the tree - to be used as the next finger
+    */
+   public WAVLNode insertNear(WAVLNode finger, int k, String i) {
+	   WAVLNode node = descendFrom(finger, k);
+	   if(node != null && node.getKey() == k) {
+		   return node;
+	   }
+	   WAVLNode location = newNode(k, i);
+	   insertAt(node, location);
+	   return location;
+   }
+
+   /**
+    * searches for k starting from finger instead of the root, see {@link #climbTowards(WAVLNode, int)}
+    * @return the node with key k if there is one, otherwise the inner node k would be hung under (null if the tree is empty)
+    */
+   private WAVLNode descendFrom(WAVLNode finger, int k) {
+	   WAVLNode curr = finger == null ? this.root : climbTowards(finger, k);
+	   WAVLNode parent = null;
+	   while(curr.isInnerNode()) {
+		   if(curr.getKey() == k) {
+			   return curr;
+		   }
+		   parent = curr;
+		   curr = curr.getKey() < k ? curr.getRight() : curr.getLeft();
+	   }
+	   return parent;
+   }
+
+   /**
+    * finds the lowest node on finger's root path whose subtree spans k.
+    * the bound on k's side only changes when climbing out of a child on that side,
+    * so a chain of the other kind of edges is walked only to find that bound and is otherwise skipped.
+    * a finger on the tree's smallest or largest node has no bound on its outer side; that node is cached
+    * once a climb finds it, so searching past the end from it (a run of appends) does not climb at all.
+    */
+   private WAVLNode climbTowards(WAVLNode finger, int k) {
+	   if(k == finger.getKey()) {
+		   return finger;
+	   }
+	   boolean right = k > finger.getKey();
+	   if(finger == (right ? this.last : this.first)) {
+		   return finger;
+	   }
+	   WAVLNode bottom = finger;
+	   for(WAVLNode curr = finger; curr.getParent() != null; curr = curr.getParent()) {
+		   WAVLNode parent = curr.getParent();
+		   if((parent.getLeft() == curr) == right) {
+			   // parent's key bounds bottom's subtree on k's side:
+			   if(right ? parent.getKey() > k : parent.getKey() < k) {
+				   return bottom;
+			   }
+			   bottom = parent;
+		   }
+	   }
+	   if(bottom == finger && !(right ? finger.getRight() : finger.getLeft()).isInnerNode()) {
+		   // No ancestor bounds finger on k's side, and neither does a child:
+		   if(right) {
+			   this.last = finger;
+		   } else {
+			   this.first = finger;
+		   }
+	   }
+	   return bottom;
    }
   
    /**
@@ -121,33 +804,79 @@ public class WAVLTree {
    */
    public int delete(int k)
    {
-	   	  WAVLNode n = search(k, this.root, -1);
-	   	  int counter = 0;
+	   	  WAVLNode n = search(k, this.root, 0);
 	   	  // If item with k doesn't exists:
-	   	  if (n.getKey() == -1) {
+	   	  if (!n.isInnerNode()) {
 	   		  return -1;
 	   	  }
+	   	  return deleteNode(n);
+   }
+
+   /**
+    * unlinks n, an inner node of this tree, rebalances and pools n if there is room
+    * @return number of rebalance steps
+    */
+   private int deleteNode(WAVLNode n) {
+	   	  int counter = unlink(n);
+	   	  if(this.poolSize < this.poolCapacity) {
+	   		  n.reset(-1, null);
+	   		  n.parent = this.pool;
+	   		  this.pool = n;
+	   		  this.poolSize++;
+	   	  }
+	   	  return counter;
+   }
+
+   /**
+    * public void setNodePoolCapacity(int capacity)
+    *
+    * keeps up to capacity deleted nodes and reuses them for later inserts,
+    * so a workload that deletes as much as it inserts stops allocating nodes. 0 (the default) turns pooling off.
+    * with pooling on, a node returned by the tree must not be used once its item is deleted.
+    * @param capacity  maximal number of nodes to keep
+    */
+   public void setNodePoolCapacity(int capacity) {
+	   this.poolCapacity = Math.max(capacity, 0);
+	   while(this.poolSize > this.poolCapacity) {
+		   this.pool = this.pool.parent;
+		   this.poolSize--;
+	   }
+   }
+
+   /**
+    * called by {@link #deleteNode(WAVLNode)}
+    * unlinks n and rebalances
+    * @return number of rebalance steps
+    */
+   private int unlink(WAVLNode n) {
 	   	  this.size --;
+	   	  if(n == this.first) {
+	   		  this.first = null;
+	   	  }
+	   	  if(n == this.last) {
+	   		  this.last = null;
+	   	  }
 	   	  
 	   	  if(n.isInnerLeaf()) {
 	   		  if(this.root==n) {
-	   			  this.root = new WAVLNode(null);
+	   			  this.root = EXTERNAL;
 	   			  return 1;
 	   		  }
-	   		  if(n.getKey()<n.getParent().getKey()) {
-	   			  n.getParent().setLeft(new WAVLNode(n.getParent()));
+	   		  WAVLNode nParent = n.getParent();
+	   		  if(n.getKey()<nParent.getKey()) {
+	   			  nParent.setLeft(EXTERNAL);
 	   		  } else {
-	   			  n.getParent().setRight(new WAVLNode(n.getParent()));
+	   			  nParent.setRight(EXTERNAL);
 	   		  }
 	   		  
-	   		  counter = reBalance(new WAVLNode(n.getParent()),true);
-	   		  n.calculatedSubTreeSizeUp();
-	   		  return counter;
+	   		  // Sizes (and aggregates) are fixed before rotating, so rotations combine up to date children:
+	   		  nParent.calculatedSubTreeSizeUp();
+	   		  return reBalanceFrom(nParent,true);
 	   	  }
 	   	  
 	   	  // Finding the one to replace n:
 	   	  WAVLNode swap = n.successor();
-	   	  if(!swap.isInnerLeaf()) {
+	   	  if(swap == null || !swap.isInnerLeaf()) {
 	   		  swap = n.predecessor();
 	   	  }
 	   	  
@@ -187,42 +916,40 @@ public class WAVLTree {
 	   	  }
 	   	  
 	   	  if(swap.getKey()<swapParent.getKey()) {
-	   		  swapParent.setLeft(swapRight);//new WAVLNode(swapParent));
+	   		  swapParent.setLeft(swapRight);
 	   		  swapRight.setParent(swapParent);
 	   	  } else {
 	   		  swapParent.setRight(swapLeft);
 	   		  swapLeft.setParent(swapParent);
 	   	  }
 		  
-	   	  // Rebalancing:
-	   	  if(swapParent == n) {
-	   		  if(swap.getKey()>n.getKey()) {
-	   			counter = reBalance(swap.getRight(),true);
-	   		  } else {
-	   			  counter = reBalance(swap.getLeft(),true);
-	   		  }
-	   	  } else if(swap.getKey()<swapParent.getKey()) {
-	   		  counter = reBalance(swapParent.getLeft(),true);
-	   	  } else {
-	   		  counter = reBalance(swapParent.getRight(),true);
-	   	  }
-	   	  swap.calculateSubTreeSize();
-	   	  swapParent.calculatedSubTreeSizeUp();
-	   	  return counter;
+	   	  // Rebalancing, from the lowest node whose subtree changed:
+	   	  WAVLNode bottom = swapParent == n ? swap : swapParent;
+	   	  bottom.calculatedSubTreeSizeUp();
+	   	  return reBalanceFrom(bottom,true);
    }
       
    /**
     * public int reBalance()
     *
-    * Rebalances the tree, returns number of operations
+    * Rebalances the tree from n's parent up, returns number of operations
     * @return number of rebalance steps
     */  
    public int reBalance(WAVLNode n,boolean isDelete) {
+	   return reBalanceFrom(n.getParent(), isDelete);
+   }
+
+   /**
+    * Rebalances the tree from start up to the root.
+    * Takes the first node to fix rather than its child,
+    * since the shared external leaf has no parent to climb from.
+    * @param start  lowest node whose rank may be invalid, may be null
+    * @return number of rebalance steps
+    */  
+   private int reBalanceFrom(WAVLNode start,boolean isDelete) {
 	   int counter = 0;
-	   WAVLNode curr = n;
 	   
-	   while (curr.getParent()!=null){	
-		   curr = curr.getParent();
+	   for (WAVLNode curr = start; curr != null; curr = curr.getParent()){	
 		   int Rank = 1 + Math.max(curr.getLeft().getRank(),curr.getRight().getRank());
 		   int LeftRank = curr.getLeft().getRank();
 		   int RightRank = curr.getRight().getRank();		   
@@ -520,11 +1247,11 @@ public class WAVLTree {
 
    	int[] arr = new int[size];
    	
-	    if(this.root == null) {
-	    	return arr;
+	    if(size >= ArrayFill.PARALLEL_SIZE) {
+	    	ForkJoinPool.commonPool().invoke(new ArrayFill(this.root, arr, null, 0));
+	    } else {
+	    	keysToArray(this.root, arr, 0);
 	    }
-	    this.tempIndex = 0;	    
-	    keysToArray(this.root,arr); 
 	    
 	    return arr;
    }
@@ -535,16 +1262,16 @@ public class WAVLTree {
     * perform inOrder traversal
     * @param curr  node to be traversed
     * @param arr  array to be updated
+    * @param offset  index in arr of the smallest key in curr's subtree
     */
-   public void keysToArray(WAVLNode curr,int[] arr) {
+   public static void keysToArray(WAVLNode curr,int[] arr, int offset) {
 	   if(!curr.isInnerNode()) {
 		   return;
 	   }	 
 	   
-	   keysToArray(curr.getLeft(),arr);	   
-	   arr[this.tempIndex] = curr.getKey();
-	   this.tempIndex ++;	   
-	   keysToArray(curr.getRight(),arr);
+	   keysToArray(curr.getLeft(),arr,offset);	   
+	   arr[offset + curr.getLeft().getSubtreeSize()] = curr.getKey();
+	   keysToArray(curr.getRight(),arr,offset + curr.getLeft().getSubtreeSize() + 1);
    }
    /**
    * public String[] infoToArray()
@@ -558,11 +1285,11 @@ public class WAVLTree {
    {
 
    	String[] arr = new String[size];
-	    if(this.root == null) {
-	    	return arr;
+	    if(size >= ArrayFill.PARALLEL_SIZE) {
+	    	ForkJoinPool.commonPool().invoke(new ArrayFill(this.root, null, arr, 0));
+	    } else {
+	    	infoToArray(this.root, arr, 0);
 	    }
-	    this.tempIndex = 0;
-	    infoToArray(this.root,arr); 
 	    return arr;
    }
    /**
@@ -571,22 +1298,104 @@ public class WAVLTree {
     * perform inOrder traversal
     * @param curr  node to be traversed
     * @param arr  array to be updated
+    * @param offset  index in arr of the info of the smallest key in curr's subtree
     */
-   public void infoToArray(WAVLNode curr,String[] arr) {
+   public static void infoToArray(WAVLNode curr,String[] arr, int offset) {
 	   if(!curr.isInnerNode()) {
 		   return;
 	   }	 
 	   
-	   infoToArray(curr.getLeft(),arr);	   
-	   arr[this.tempIndex] = curr.getValue();
-	   this.tempIndex ++;	   
-	   infoToArray(curr.getRight(),arr);
+	   infoToArray(curr.getLeft(),arr,offset);	   
+	   arr[offset + curr.getLeft().getSubtreeSize()] = curr.getValue();
+	   infoToArray(curr.getRight(),arr,offset + curr.getLeft().getSubtreeSize() + 1);
    }
 
-  
    /**
-    * public int size()
-    * Returns the number of nodes in the tree.
+    * public FrozenWAVLTree freeze()
+    *
+    * @return an immutable copy of the tree in a pointer-free Eytzinger layout,
+    * for data that is only read from now on, O(n).
+    * later changes to this tree do not affect the copy.
+    * @throws IllegalArgumentException if the tree holds more than {@link FrozenWAVLTree#MAX_SIZE} items
+    */
+   public FrozenWAVLTree freeze()
+   {
+	   FrozenWAVLTree.checkSize(size());
+	   return FrozenWAVLTree.ofSorted(keysToArray(), infoToArray());
+   }
+
+   /**
+    * public void writeSnapshot(Path path)
+    *
+    * writes all items to path in the binary snapshot format of {@link WAVLSnapshot},
+    * streaming them in order through a FileChannel, O(n).
+    * the file is replaced atomically once it is complete and forced to disk.
+    */
+   public void writeSnapshot(Path path) throws IOException
+   {
+	   WAVLSnapshot.write(this, path);
+   }
+
+   /**
+    * public static WAVLTree openSnapshot(Path path)
+    *
+    * memory-maps a file written by {@link #writeSnapshot(Path)}, verifies its checksum
+    * and builds the tree with {@link #fromSorted(PrimitiveIterator.OfInt, Iterator, int)}, O(n) with no rebalancing.
+    * @throws IOException if the file can not be read, or is not a valid snapshot
+    */
+   public static WAVLTree openSnapshot(Path path) throws IOException
+   {
+	   return WAVLSnapshot.read(path, WAVLTree::fromSorted);
+   }
+
+   /**
+    * fills the slice of keys (or infos) belonging to a subtree, whose offset follows from subtree sizes,
+    * handing the left subtree's slice to another worker above {@link #SEQUENTIAL_SIZE} nodes
+    */
+   private static class ArrayFill extends RecursiveAction {
+	   private static final long serialVersionUID = 1L;
+	   private static final int PARALLEL_SIZE = 1 << 16;
+	   private static final int SEQUENTIAL_SIZE = 1 << 13;
+
+	   private final WAVLNode node;
+	   private final int[] keys;
+	   private final String[] infos;
+	   private final int offset;
+
+	   private ArrayFill(WAVLNode node, int[] keys, String[] infos, int offset) {
+		   this.node = node;
+		   this.keys = keys;
+		   this.infos = infos;
+		   this.offset = offset;
+	   }
+
+	   @Override
+	   protected void compute() {
+		   if(this.node.getSubtreeSize() < SEQUENTIAL_SIZE) {
+			   if(this.keys != null) {
+				   keysToArray(this.node, this.keys, this.offset);
+			   } else {
+				   infoToArray(this.node, this.infos, this.offset);
+			   }
+			   return;
+		   }
+		   int index = this.offset + this.node.getLeft().getSubtreeSize();
+		   ArrayFill left = new ArrayFill(this.node.getLeft(), this.keys, this.infos, this.offset);
+		   left.fork();
+		   if(this.keys != null) {
+			   this.keys[index] = this.node.getKey();
+		   } else {
+			   this.infos[index] = this.node.getValue();
+		   }
+		   new ArrayFill(this.node.getRight(), this.keys, this.infos, index + 1).compute();
+		   left.join();
+	   }
+   }
+
+  
+   /**
+    * public int size()
+    * Returns the number of nodes in the tree.
     */
    public int size()
    {
@@ -601,7 +1410,7 @@ public class WAVLTree {
     */
    public WAVLNode getRoot()
    {
-           return this.root;
+           return this.root == EXTERNAL ? null : this.root;
    }
      /**
     * public int select(int i)
@@ -614,17 +1423,460 @@ public class WAVLTree {
     */   
    public String select(int i)
    {
-	   	   if(this.size == 0 || i > this.size || i <= 0) {
+	   	   WAVLNode n = selectNode(i);
+	   	   if(n == null) {
 	   		   return null;
 	   	   }
-           return this.infoToArray()[i-1]; 
+           return n.getValue();
+   }
+
+     /**
+    * public Integer selectKey(int i)
+    *
+    * @return the i'th smallest key (return null if i is out of range)
+    *
+    */
+   public Integer selectKey(int i)
+   {
+	   	   return keyOf(selectNode(i));
+   }
+
+   /**
+    * descends from the root by subTreeSize, O(log n)
+    * @param i  1-based position of the wanted node
+    * @return node holding the i'th smallest key, null if i is out of range
+    */
+   private WAVLNode selectNode(int i) {
+	   if(this.size == 0 || i > this.size || i <= 0) {
+		   return null;
+	   }
+	   WAVLNode curr = this.root;
+	   while(curr.isInnerNode()) {
+		   int leftSize = curr.getLeft().getSubtreeSize();
+		   if(i == leftSize + 1) {
+			   return curr;
+		   }
+		   if(i <= leftSize) {
+			   curr = curr.getLeft();
+		   } else {
+			   i -= leftSize + 1;
+			   curr = curr.getRight();
+		   }
+	   }
+	   return null;
+   }
+
+     /**
+    * public int rank(int k)
+    *
+    * @return number of keys in the tree that are strictly smaller than k, O(log n)
+    * Example: rank(minKey()) returns 0, rank(k) for k bigger than all keys returns size()
+    *
+    */
+   public int rank(int k)
+   {
+           return countBelow(k, false);
+   }
+
+     /**
+    * public int countInRange(int lo, int hi)
+    *
+    * @return number of keys k in the tree s.t lo <= k <= hi (0 if lo > hi), O(log n)
+    *
+    */
+   public int countInRange(int lo, int hi)
+   {
+	   	   if(lo > hi) {
+	   		   return 0;
+	   	   }
+           return countBelow(hi, true) - countBelow(lo, false);
+   }
+
+   /**
+    * public <A> A aggregate(int lo, int hi)
+    *
+    * @return the tree's augmentation combined over the items with keys lo <= k <= hi in key order
+    * (its identity if there are none), O(log n)
+    * @throws IllegalStateException if the tree was not created with an augmentation
+    */
+   @SuppressWarnings("unchecked")
+   public <A> A aggregate(int lo, int hi)
+   {
+	   if(this.augmentation == null) {
+		   throw new IllegalStateException("tree has no augmentation");
+	   }
+	   if(lo > hi) {
+		   return (A) this.augmentation.identity();
+	   }
+	   return (A) aggregate(this.root, lo, hi, false, false);
+   }
+
+   /**
+    * called by {@link #aggregate(int, int)}
+    * below the node where the paths to lo and hi part, one bound is always open,
+    * so each side walks a single path and takes whole subtree aggregates off it
+    * @param loOpen  true if every key of n's subtree is known to be >= lo
+    * @param hiOpen  true if every key of n's subtree is known to be <= hi
+    */
+   private Object aggregate(WAVLNode n, int lo, int hi, boolean loOpen, boolean hiOpen) {
+	   if(!n.isInnerNode()) {
+		   return this.augmentation.identity();
+	   }
+	   if(loOpen && hiOpen) {
+		   return n.getAggregate();
+	   }
+	   if(!loOpen && n.getKey() < lo) {
+		   return aggregate(n.getRight(), lo, hi, false, hiOpen);
+	   }
+	   if(!hiOpen && n.getKey() > hi) {
+		   return aggregate(n.getLeft(), lo, hi, loOpen, false);
+	   }
+	   Object left = aggregate(n.getLeft(), lo, hi, loOpen, true);
+	   Object right = aggregate(n.getRight(), lo, hi, true, hiOpen);
+	   return this.augmentation.combine(this.augmentation.combine(left, this.augmentation.lift(n)), right);
+   }
+
+   /**
+    * called by {@link #rank(int)} and {@link #countInRange(int, int)}
+    * descends from the root once, summing subTreeSize of the left subtrees passed by
+    * @param k  bound key
+    * @param inclusive  true to count keys <= k, false to count keys < k
+    * @return number of keys below (or equal to) k
+    */
+   private int countBelow(int k, boolean inclusive) {
+	   int count = 0;
+	   WAVLNode curr = this.root;
+	   while(curr.isInnerNode()) {
+		   if(curr.getKey() < k || (inclusive && curr.getKey() == k)) {
+			   count += curr.getLeft().getSubtreeSize() + 1;
+			   curr = curr.getRight();
+		   } else {
+			   curr = curr.getLeft();
+		   }
+	   }
+	   return count;
+   }
+
+   /**
+    * public Iterator<WAVLNode> iterator()
+    *
+    * @return a lazy iterator over the nodes in ascending key order,
+    * O(1) amortized per step and O(1) memory.
+    * the tree must not be changed while iterating.
+    */
+   @Override
+   public Iterator<WAVLNode> iterator()
+   {
+	   return new NodeIterator(firstNode(), Integer.MAX_VALUE, false);
+   }
+
+   /**
+    * public Iterator<WAVLNode> descendingIterator()
+    *
+    * @return a lazy iterator over the nodes in descending key order
+    * the tree must not be changed while iterating.
+    */
+   public Iterator<WAVLNode> descendingIterator()
+   {
+	   return new NodeIterator(lastNode(), Integer.MIN_VALUE, true);
+   }
+
+   /**
+    * public Iterator<WAVLNode> range(int lo, int hi)
+    *
+    * @return a lazy iterator over the nodes with lo <= key <= hi in ascending key order,
+    * O(log n) to find the first node and O(1) amortized per step after it.
+    * the tree must not be changed while iterating.
+    */
+   public Iterator<WAVLNode> range(int lo, int hi)
+   {
+	   return new NodeIterator(ceilingNode(lo), hi, false);
+   }
+
+   /**
+    * public Spliterator<WAVLNode> spliterator()
+    *
+    * @return a sized spliterator over the nodes in ascending key order.
+    * it splits by position in O(1), halving its range exactly since subtree sizes give every node's position,
+    * and finds the first node of a range with one O(log n) select.
+    * the tree must not be changed while traversing.
+    */
+   @Override
+   public Spliterator<WAVLNode> spliterator()
+   {
+	   return new NodeSpliterator(this, 0, this.size, null);
+   }
+
+   /**
+    * public Stream<WAVLNode> stream()
+    *
+    * @return a stream over the nodes in ascending key order, see {@link #spliterator()}.
+    * parallel() streams split the tree into equal halves.
+    */
+   public Stream<WAVLNode> stream()
+   {
+	   return StreamSupport.stream(spliterator(), false);
+   }
+
+   /**
+    * @return node with the smallest key, null if the tree is empty
+    */
+   private WAVLNode firstNode() {
+	   if(!this.root.isInnerNode()) {
+		   return null;
+	   }
+	   WAVLNode curr = this.root;
+	   while(curr.getLeft().isInnerNode()) {
+		   curr = curr.getLeft();
+	   }
+	   return curr;
+   }
+
+   /**
+    * @return node with the largest key, null if the tree is empty
+    */
+   private WAVLNode lastNode() {
+	   if(!this.root.isInnerNode()) {
+		   return null;
+	   }
+	   WAVLNode curr = this.root;
+	   while(curr.getRight().isInnerNode()) {
+		   curr = curr.getRight();
+	   }
+	   return curr;
+   }
+
+   /**
+    * public Integer floorKey(int k)
+    *
+    * @return the largest key <= k (return null if there is none, see {@link #floorNode(int)})
+    */
+   public Integer floorKey(int k)
+   {
+	   return keyOf(floorNode(k));
+   }
+
+   /**
+    * public Integer ceilingKey(int k)
+    *
+    * @return the smallest key >= k (return null if there is none, see {@link #ceilingNode(int)})
+    */
+   public Integer ceilingKey(int k)
+   {
+	   return keyOf(ceilingNode(k));
+   }
+
+   /**
+    * public Integer lowerKey(int k)
+    *
+    * @return the largest key < k (return null if there is none, see {@link #lowerNode(int)})
+    */
+   public Integer lowerKey(int k)
+   {
+	   return keyOf(lowerNode(k));
+   }
+
+   /**
+    * public Integer higherKey(int k)
+    *
+    * @return the smallest key > k (return null if there is none, see {@link #higherNode(int)})
+    */
+   public Integer higherKey(int k)
+   {
+	   return keyOf(higherNode(k));
+   }
+
+   /**
+    * public WAVLNode floorNode(int k)
+    *
+    * @return node with the largest key <= k, null if there is none. O(log n)
+    */
+   public WAVLNode floorNode(int k)
+   {
+	   return boundNode(k, true, true);
+   }
+
+   /**
+    * public WAVLNode ceilingNode(int k)
+    *
+    * @return node with the smallest key >= k, null if there is none. O(log n)
+    */
+   public WAVLNode ceilingNode(int k)
+   {
+	   return boundNode(k, false, true);
+   }
+
+   /**
+    * public WAVLNode lowerNode(int k)
+    *
+    * @return node with the largest key < k, null if there is none. O(log n)
+    */
+   public WAVLNode lowerNode(int k)
+   {
+	   return boundNode(k, true, false);
+   }
+
+   /**
+    * public WAVLNode higherNode(int k)
+    *
+    * @return node with the smallest key > k, null if there is none. O(log n)
+    */
+   public WAVLNode higherNode(int k)
+   {
+	   return boundNode(k, false, false);
+   }
+
+   /**
+    * single root to leaf pass, remembering the last node passed on the wanted side of k
+    * @param k  bound key
+    * @param below  true to look for keys below k, false for keys above k
+    * @param inclusive  true if k itself is an answer
+    * @return the closest node to k on the wanted side, null if there is none
+    */
+   private WAVLNode boundNode(int k, boolean below, boolean inclusive) {
+	   WAVLNode best = null;
+	   WAVLNode curr = this.root;
+	   while(curr.isInnerNode()) {
+		   if(inclusive && curr.getKey() == k) {
+			   return curr;
+		   }
+		   if(below ? curr.getKey() < k : curr.getKey() > k) {
+			   best = curr;
+			   curr = below ? curr.getRight() : curr.getLeft();
+		   } else {
+			   curr = below ? curr.getLeft() : curr.getRight();
+		   }
+	   }
+	   return best;
+   }
+
+   /**
+    * @return n's key, null if n is null
+    */
+   private static Integer keyOf(WAVLNode n) {
+	   if(n == null) {
+		   return null;
+	   }
+	   return n.getKey();
+   }
+
+   /**
+    * walks the nodes by {@link WAVLNode#successor()} or {@link WAVLNode#predecessor()}
+    * until it passes bound
+    */
+   private static class NodeIterator implements Iterator<WAVLNode> {
+	   private WAVLNode next;
+	   private final int bound;
+	   private final boolean descending;
+
+	   /**
+	    * @param first  first node to return, null for an empty iteration
+	    * @param bound  last key to return (inclusive): an upper bound, or a lower bound if descending
+	    */
+	   private NodeIterator(WAVLNode first, int bound, boolean descending) {
+		   this.next = first;
+		   this.bound = bound;
+		   this.descending = descending;
+	   }
+
+	   @Override
+	   public boolean hasNext() {
+		   return next != null && (descending ? next.getKey() >= bound : next.getKey() <= bound);
+	   }
+
+	   @Override
+	   public WAVLNode next() {
+		   if(!hasNext()) {
+			   throw new NoSuchElementException();
+		   }
+		   WAVLNode curr = next;
+		   next = descending ? curr.predecessor() : curr.successor();
+		   return curr;
+	   }
+   }
+
+
+   /**
+    * called by {@link #spliterator()}
+    * covers the nodes at positions from (inclusive) to to (exclusive), 0 based,
+    * next being the node at position from once traversal has started
+    */
+   private static class NodeSpliterator implements Spliterator<WAVLNode> {
+	   private final WAVLTree tree;
+	   private int from;
+	   private final int to;
+	   private WAVLNode next;
+
+	   private NodeSpliterator(WAVLTree tree, int from, int to, WAVLNode next) {
+		   this.tree = tree;
+		   this.from = from;
+		   this.to = to;
+		   this.next = next;
+	   }
+
+	   @Override
+	   public boolean tryAdvance(Consumer<? super WAVLNode> action) {
+		   if(from >= to) {
+			   return false;
+		   }
+		   if(next == null) {
+			   next = tree.selectNode(from + 1);
+		   }
+		   WAVLNode curr = next;
+		   from++;
+		   next = from < to ? curr.successor() : null;
+		   action.accept(curr);
+		   return true;
+	   }
+
+	   @Override
+	   public void forEachRemaining(Consumer<? super WAVLNode> action) {
+		   if(from >= to) {
+			   return;
+		   }
+		   WAVLNode curr = next == null ? tree.selectNode(from + 1) : next;
+		   int count = to - from;
+		   from = to;
+		   next = null;
+		   for(int i = 0; i < count; i++) {
+			   action.accept(curr);
+			   curr = curr.successor();
+		   }
+	   }
+
+	   @Override
+	   public Spliterator<WAVLNode> trySplit() {
+		   int mid = from + (to - from) / 2;
+		   if(mid == from) {
+			   return null;
+		   }
+		   NodeSpliterator prefix = new NodeSpliterator(tree, from, mid, next);
+		   from = mid;
+		   next = null;
+		   return prefix;
+	   }
+
+	   @Override
+	   public long estimateSize() {
+		   return to - from;
+	   }
+
+	   @Override
+	   public int characteristics() {
+		   return ORDERED | SORTED | DISTINCT | NONNULL | SIZED | SUBSIZED;
+	   }
+
+	   @Override
+	   public Comparator<? super WAVLNode> getComparator() {
+		   return Comparator.comparingInt(WAVLNode::getKey);
+	   }
    }
 
 
    /**
    * public class WAVLNode
    */
-  public class WAVLNode{
+  public static class WAVLNode{
 	  private int key;
 	  private String value;
 	  private WAVLNode left;
@@ -632,6 +1884,9 @@ public class WAVLTree {
 	  private WAVLNode parent;
 	  private int subTreeSize;
 	  private int rank;
+	  private WAVLAugmentation<Object> augmentation;
+	  private Object aggregate;
+	  private Object attachment;
 
 	  // Create root:
 	  /**
@@ -641,8 +1896,8 @@ public class WAVLTree {
 	  public WAVLNode() {
 		  this.key = -1;
 		  this.value = null;
-		  this.left = new WAVLNode(this);
-		  this.right = new WAVLNode(this);
+		  this.left = EXTERNAL;
+		  this.right = EXTERNAL;
 		  this.parent = null;
 		  this.subTreeSize = 1;
 		  this.rank = 0;
@@ -650,9 +1905,10 @@ public class WAVLTree {
 	  
 	  /**
 	   * external leaf constructor
+	   * only used to create the shared {@link WAVLTree#EXTERNAL}
 	   * @param parent setting the node's parent
 	   */
-	  public WAVLNode(WAVLNode parent) {
+	  private WAVLNode(WAVLNode parent) {
 		  this.key = -1;
 		  this.value = null;
 		  this.left = null;
@@ -673,13 +1929,29 @@ public class WAVLTree {
 	  public WAVLNode(int key,String value) {		  
 		  this.key = key;
 		  this.value = value;
-		  this.left = new WAVLNode();
-		  this.right = new WAVLNode();
+		  this.left = EXTERNAL;
+		  this.right = EXTERNAL;
 		  this.parent = null;
 		  this.subTreeSize = 1;
 		  this.rank = 0;
 	  }
 	  
+	  /**
+	   * clears a pooled node and makes it a fresh leaf for (key, value), as {@link #WAVLNode(int, String)} would
+	   */
+	  private void reset(int key, String value) {
+		  this.key = key;
+		  this.value = value;
+		  this.left = EXTERNAL;
+		  this.right = EXTERNAL;
+		  this.parent = null;
+		  this.subTreeSize = 1;
+		  this.rank = 0;
+		  this.augmentation = null;
+		  this.aggregate = null;
+		  this.attachment = null;
+	  }
+
 	  /**
 	   * getter
 	   * @return int this.rank
@@ -718,7 +1990,6 @@ public class WAVLTree {
 	 */
 	  public void calculateSubTreeSize() {
 		if(!this.isInnerNode()) {
-			this.subTreeSize = 0;
 			return;
 		}
 		int LeftTree = 0;
@@ -730,8 +2001,54 @@ public class WAVLTree {
 			RightTree = this.right.subTreeSize;
 		}
 		this.subTreeSize = 1 + LeftTree + RightTree;			
+		if(this.augmentation != null) {
+			calculateAggregate();
+		}
 	}
 
+	/**
+	 * calculates and updates the augmentation's aggregate of this node only,
+	 * combining its children's aggregates with its own item
+	 */
+	  private void calculateAggregate() {
+		Object leftAggregate = this.left.isInnerNode() ? this.left.aggregate : this.augmentation.identity();
+		Object rightAggregate = this.right.isInnerNode() ? this.right.aggregate : this.augmentation.identity();
+		Object own = this.augmentation.lift(this);
+		this.aggregate = this.augmentation.combine(this.augmentation.combine(leftAggregate, own), rightAggregate);
+	}
+
+	  /**
+	   * getter
+	   * @return the augmentation's aggregate over this node's subtree, null if the tree has no augmentation
+	   */
+	  public Object getAggregate() {
+		  return this.aggregate;
+	  }
+
+	  /**
+	   * getter
+	   * @return {@link #attachment}, an object the tree's user keeps on this node, null if none was set
+	   */
+	  public Object getAttachment() {
+		  return this.attachment;
+	  }
+
+	  /**
+	   * setter
+	   * @param attachment set {@link #attachment} as attachment, recomputing the aggregates up to the root
+	   * like {@link #setValue(String)}, for an augmentation that lifts it. it stays with this node only:
+	   * copies of the tree (fromSorted, snapshots, set operations) do not carry it
+	   */
+	  public void setAttachment(Object attachment) {
+		  if(this == EXTERNAL) {
+			  return;
+		  }
+		  this.attachment = attachment;
+		  if(this.augmentation != null) {
+			  calculatedSubTreeSizeUp();
+		  }
+	  }
+
 	 /**
 	 * @return true iff not external (rank != -1) and has no right and left
 	 */
@@ -750,9 +2067,12 @@ public class WAVLTree {
 	  /**
 	 * setter
 	 * @param parent set {@link #parent} as parent
+	 * ignored on the shared external leaf, which never has a parent
 	 */
 	  public void setParent(WAVLNode parent) {
-		this.parent = parent;
+		if(this != EXTERNAL) {
+			this.parent = parent;
+		}
 	  }
 	  
 	  /**
@@ -766,9 +2086,12 @@ public class WAVLTree {
 	/**
 	 * setter
 	 * @param subTreeSize set {@link #subTreeSize} as subTreeSize
+	 * ignored on the shared external leaf, like every setter
 	 */
 	  public void setSubTreeSize(int subTreeSize) {
-		  this.subTreeSize = subTreeSize;
+		  if(this != EXTERNAL) {
+			  this.subTreeSize = subTreeSize;
+		  }
 	  }
 
 	/**
@@ -776,7 +2099,9 @@ public class WAVLTree {
 	 * @param key set {@link #key} as key
 	 */
 	  public void setKey(int key) {
-		  this.key = key;
+		  if(this != EXTERNAL) {
+			  this.key = key;
+		  }
 	  }
 
 	/**
@@ -784,7 +2109,13 @@ public class WAVLTree {
 	 * @param value set {@link #value} as value
 	 */
 	  public void setValue(String value) {
+		  if(this == EXTERNAL) {
+			  return;
+		  }
 		  this.value = value;
+		  if(this.augmentation != null) {
+			  calculatedSubTreeSizeUp();
+		  }
 	  }
 
 	  /**
@@ -792,7 +2123,9 @@ public class WAVLTree {
 	   * @param left set {@link #left} as left
 	   */
 	  public void setLeft(WAVLNode left) {
-		  this.left = left;
+		  if(this != EXTERNAL) {
+			  this.left = left;
+		  }
 	  }
 
 	  /**
@@ -800,7 +2133,9 @@ public class WAVLTree {
 	   * @param right set {@link #right} as right
 	   */
 	  public void setRight(WAVLNode right) {
-		  this.right = right;
+		  if(this != EXTERNAL) {
+			  this.right = right;
+		  }
 	  }
 
 	/**
@@ -808,7 +2143,9 @@ public class WAVLTree {
 	 * @param rank set {@link #rank} as rank
 	 */
 	  public void setRank(int rank) {
-		  this.rank = rank;
+		  if(this != EXTERNAL) {
+			  this.rank = rank;
+		  }
 	  }
       
     /**
@@ -879,7 +2216,8 @@ public class WAVLTree {
                                
      /**
       *            
-      * @return node's successor WAVLNode in the tree s.t @ret key is higher than this.key and smallest among all higher nodes.
+      * @return node's successor WAVLNode in the tree s.t @ret key is higher than this.key and smallest among all higher nodes,
+      * or null if this holds the maximal key.
       */
 	  public WAVLNode successor() {
 		  WAVLNode curr = this;    	      	  
@@ -897,15 +2235,16 @@ public class WAVLTree {
 			  return curr;
 		  }
     	  
-		  while(curr.parent != null && curr.parent.left.key == curr.key) {
+		  while(curr.parent != null && curr.parent.right == curr) {
 			  curr = curr.parent;
 		  }
-		  return curr;  	
+		  return curr.parent;  	
 	  }
        
     /**
      *            
-     * @return node's predecessor WAVLNode in the tree that s.t @ret key is lower than this.key and biggest among all higher nodes.
+     * @return node's predecessor WAVLNode in the tree that s.t @ret key is lower than this.key and biggest among all lower nodes,
+     * or null if this holds the minimal key.
      */   
 	  public WAVLNode predecessor() {
 		  WAVLNode curr = this;    	      	  
@@ -923,15 +2262,10 @@ public class WAVLTree {
 			  return curr;
 		  }
     	  
-		  if(curr.parent.right.key == curr.key) {
-			  return curr.parent;
-		  }
-    	 
-		  curr = curr.getParent();
-		  while(curr.parent != null && curr.parent.right.key == curr.key) {
+		  while(curr.parent != null && curr.parent.left == curr) {
 			  curr = curr.parent;
 		  }
-		  return curr;
+		  return curr.parent;
    
     	 
 	  }
@@ -979,6 +2313,9 @@ public class WAVLTree {
 		  WAVLNode curr = this;
 		  while(curr!=null) { 
 			  curr.subTreeSize += updateBy;
+			  if(curr.augmentation != null) {
+				  curr.calculateAggregate();
+			  }
 			  curr = curr.getParent();
 		  }
 	  }
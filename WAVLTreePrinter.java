@@ -19,7 +19,7 @@ class WAVLTreePrinter {
 
     @SuppressWarnings("ConstantConditions")
     private static List<String> repr(WAVLTree.WAVLNode node, boolean byKey) {
-        if (!node.isInnerNode()) {
+        if (node == null || !node.isInnerNode()) {
             return Collections.singletonList("#");
         }
 